@@ -1,3 +1,7 @@
 @echo off
 
-java -cp target\getindata-linserver-0.0.1-SNAPSHOT.jar -Dloader.main=com.slupicki.linserver.PerformanceTest org.springframework.boot.loader.PropertiesLauncher %*
+if "%~1"=="" (
+  mvnw.cmd -B -P jmh test-compile exec:exec
+) else (
+  mvnw.cmd -B -P jmh test-compile exec:exec -Djmh.args="%*"
+)
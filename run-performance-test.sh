@@ -1,3 +1,7 @@
 #!/usr/bin/env bash
 
-java -cp target/getindata-linserver-0.0.1-SNAPSHOT.jar -Dloader.main=com.slupicki.linserver.PerformanceTest org.springframework.boot.loader.PropertiesLauncher $@
+if [ $# -eq 0 ]; then
+  ./mvnw -B -P jmh test-compile exec:exec
+else
+  ./mvnw -B -P jmh test-compile exec:exec -Djmh.args="$*"
+fi
@@ -0,0 +1,114 @@
+package com.slupicki.linserver;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * Text and phrases shared by benchmarks. Phrases are drawn from the text itself with a fixed seed, so every run
+ * and every engine is measured with the same ones.
+ */
+final class BenchmarkCorpus {
+
+    static final String TEST_FILE = "20_000_mil_podmorskiej_zeglugi.txt";
+    static final int PHRASES = 1024;
+
+    private BenchmarkCorpus() {}
+
+    /**
+     * Loads and publishes the first {@code lines} lines of the test file (all when 0).
+     */
+    static SourceText.Lines load(int lines) throws IOException {
+        SourceText.Lines text = SourceText.read(TEST_FILE);
+        String[] selected = new String[lines > 0 ? Math.min(lines, text.size()) : text.size()];
+        Arrays.setAll(selected, text::get);
+        SourceText.setLines(selected);
+        return SourceText.current();
+    }
+
+    static SearchService engine(String name, int limit) {
+        switch (name) {
+            case "map":
+                IndexSearchServiceImpl searchService = new IndexSearchServiceImpl();
+                searchService.setMaxPhraseLengthToIndex(limit);
+                return searchService;
+            case "tree":
+                return new TreeSearchServiceImpl();
+            case "radix":
+                return new RadixTreeSearchServiceImpl();
+            case "suffix":
+                return new SuffixArraySearchServiceImpl();
+            case "positional":
+                return new PositionalIndexSearchServiceImpl();
+            default:
+                throw new IllegalArgumentException("Unknown engine: " + name);
+        }
+    }
+
+    /**
+     * Fragments of random lines from {@code minWords} to {@code maxWords} words long, cut at word boundaries.
+     */
+    static String[] hits(SourceText.Lines text, int minWords, int maxWords, long seed) {
+        Random random = new Random(seed);
+        Tokenizer words = new Tokenizer();
+        Set<String> phrases = new LinkedHashSet<>();
+        for (int attempt = 0; phrases.size() < PHRASES && attempt < PHRASES * 100; attempt++) {
+            String line = text.get(random.nextInt(text.size()));
+            words.words(line);
+            int first = words.isEmpty(0) ? 1 : 0;
+            int last = words.isEmpty(words.count() - 1) ? words.count() - 2 : words.count() - 1;
+            int length = minWords + random.nextInt(maxWords - minWords + 1);
+            if (last - first + 1 < length) {
+                continue;
+            }
+            int from = first + random.nextInt(last - first + 2 - length);
+            phrases.add(line.substring(words.start(from), words.end(from + length - 1)));
+        }
+        return toArray(phrases);
+    }
+
+    /**
+     * Pairs of words from different lines and hits with a mistyped letter, found in none of the lines.
+     */
+    static String[] misses(SourceText.Lines text, long seed) {
+        Random random = new Random(seed);
+        String[] words = hits(text, 1, 1, seed);
+        String[] phrases = hits(text, 2, 3, seed + 1);
+        Set<String> misses = new LinkedHashSet<>();
+        for (int attempt = 0; misses.size() < PHRASES && attempt < PHRASES * 100; attempt++) {
+            String candidate;
+            if (random.nextBoolean()) {
+                candidate = words[random.nextInt(words.length)] + " " + words[random.nextInt(words.length)];
+            } else {
+                String phrase = phrases[random.nextInt(phrases.length)];
+                int typo = random.nextInt(phrase.length());
+                candidate = phrase.substring(0, typo) + 'q' + phrase.substring(typo + 1);
+            }
+            if (isMiss(text, candidate.toLowerCase(SearchService.LOCALE_PL))) {
+                misses.add(candidate);
+            }
+        }
+        return toArray(misses);
+    }
+
+    private static boolean isMiss(SourceText.Lines text, String lowerCasePhrase) {
+        for (int n = 0; n < text.size(); n++) {
+            if (text.lowerCase(n).contains(lowerCasePhrase)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static String[] toArray(Set<String> phrases) {
+        if (phrases.isEmpty()) {
+            throw new IllegalStateException("Text is too short to draw phrases from");
+        }
+        String[] result = new String[PHRASES];
+        String[] distinct = phrases.toArray(String[]::new);
+        Arrays.setAll(result, n -> distinct[n % distinct.length]);
+        return result;
+    }
+}
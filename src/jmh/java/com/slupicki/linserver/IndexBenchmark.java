@@ -0,0 +1,49 @@
+package com.slupicki.linserver;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 3)
+@Fork(value = 1, jvmArgsAppend = {"-Xms2g", "-Xmx4g"})
+@State(Scope.Benchmark)
+public class IndexBenchmark {
+
+    @Param({"map", "tree", "radix", "positional", "suffix"})
+    public String engine;
+
+    @Param("3")
+    public int limit;
+
+    @Param("0")
+    public int lines;
+
+    private SourceText.Lines text;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        text = BenchmarkCorpus.load(lines);
+    }
+
+    @Benchmark
+    public SearchService index() {
+        SearchService searchService = BenchmarkCorpus.engine(engine, limit);
+        searchService.index(text);
+        return searchService;
+    }
+}
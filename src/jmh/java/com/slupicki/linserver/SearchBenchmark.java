@@ -0,0 +1,133 @@
+package com.slupicki.linserver;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Search and line lookups on an indexed text, one phrase of a corpus per invocation. The "mixed" group runs
+ * hits, misses and line lookups concurrently, like the JMeter plan does over HTTP.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms2g", "-Xmx4g"})
+@State(Scope.Benchmark)
+public class SearchBenchmark {
+
+    private static final String SEARCH_PHRASE = "Ned Land";
+
+    @Param({"map", "tree", "radix", "positional", "suffix"})
+    public String engine;
+
+    @Param("3")
+    public int limit;
+
+    @Param("0")
+    public int lines;
+
+    private SearchService searchService;
+    private int lineCount;
+    private String[] shortHits;
+    private String[] longHits;
+    private String[] misses;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        SourceText.Lines text = BenchmarkCorpus.load(lines);
+        lineCount = text.size();
+        searchService = BenchmarkCorpus.engine(engine, limit);
+        searchService.index();
+        shortHits = BenchmarkCorpus.hits(text, 1, 2, 1);
+        longHits = BenchmarkCorpus.hits(text, 4, 6, 2);
+        misses = BenchmarkCorpus.misses(text, 3);
+    }
+
+    @State(Scope.Thread)
+    public static class Cursor {
+        private int next;
+
+        String next(String[] phrases) {
+            return phrases[next++ & (BenchmarkCorpus.PHRASES - 1)];
+        }
+
+        int nextLine(int lines) {
+            next = next + 1 == Integer.MAX_VALUE ? 0 : next + 1;
+            return next % lines + 1;
+        }
+    }
+
+    @Benchmark
+    public String searchNedLand() {
+        return searchService.search(SEARCH_PHRASE);
+    }
+
+    @Benchmark
+    public String searchShortHit(Cursor cursor) {
+        return searchService.search(cursor.next(shortHits));
+    }
+
+    @Benchmark
+    public String searchShortHitFirst10(Cursor cursor) {
+        return searchService.search(cursor.next(shortHits), 10);
+    }
+
+    @Benchmark
+    public String searchLongHit(Cursor cursor) {
+        return searchService.search(cursor.next(longHits));
+    }
+
+    @Benchmark
+    public Object searchMiss(Cursor cursor) {
+        return search(cursor.next(misses));
+    }
+
+    @Benchmark
+    public String getLine(Cursor cursor) {
+        return searchService.getLine(cursor.nextLine(lineCount));
+    }
+
+    @Benchmark
+    @Group("mixed")
+    @GroupThreads(4)
+    public String mixedSearchHit(Cursor cursor) {
+        return searchService.search(cursor.next(shortHits));
+    }
+
+    @Benchmark
+    @Group("mixed")
+    @GroupThreads(2)
+    public Object mixedSearchMiss(Cursor cursor) {
+        return search(cursor.next(misses));
+    }
+
+    @Benchmark
+    @Group("mixed")
+    @GroupThreads(2)
+    public String mixedGetLine(Cursor cursor) {
+        return searchService.getLine(cursor.nextLine(lineCount));
+    }
+
+    private Object search(String phrase) {
+        try {
+            return searchService.search(phrase);
+        } catch (NotFoundException e) {
+            return e;
+        }
+    }
+}
@@ -0,0 +1,62 @@
+package com.slupicki.linserver;
+
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+@RestController
+public class AdminController {
+
+    private final Logger log = LoggerFactory.getLogger(AdminController.class);
+
+    private final IndexLoader indexLoader;
+    private final CachingSearchService searchCache;
+    private final ShardCoordinator coordinator;
+
+    public AdminController(IndexLoader indexLoader, CachingSearchService searchCache, ShardCoordinator coordinator) {
+        this.indexLoader = indexLoader;
+        this.searchCache = searchCache;
+        this.coordinator = coordinator;
+    }
+
+    @PostMapping("/admin/reload")
+    public CompletableFuture<String> reload() {
+        log.info("Request to reload source text");
+        if (coordinator.isEnabled()) {
+            coordinator.refresh();
+            return CompletableFuture.completedFuture("Line ranges of shards will be read again");
+        }
+        return indexLoader.reload().thenApply(lines -> String.format("Reloaded %d lines", lines));
+    }
+
+    @GetMapping("/admin/shard")
+    public Map<String, Object> shard() {
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("shard", indexLoader.getShard());
+        result.put("shards", indexLoader.getShards());
+        result.put("firstLine", indexLoader.getFirstLine() + 1);
+        result.put("lines", SourceText.size());
+        return result;
+    }
+
+    @GetMapping("/admin/cache")
+    public Map<String, Object> cacheStats() {
+        CacheStats stats = searchCache.stats();
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("maximumWeight", searchCache.getMaximumWeight());
+        result.put("size", searchCache.size());
+        result.put("hits", stats.hitCount());
+        result.put("misses", stats.missCount());
+        result.put("hitRate", stats.hitRate());
+        result.put("evictions", stats.evictionCount());
+        result.put("evictedWeight", stats.evictionWeight());
+        return result;
+    }
+}
@@ -7,27 +7,53 @@ import org.springframework.boot.ApplicationArguments;
 import org.springframework.boot.ApplicationRunner;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.context.ApplicationContext;
 import org.springframework.context.annotation.Bean;
-import org.springframework.core.task.TaskExecutor;
-import org.springframework.scheduling.annotation.EnableAsync;
-import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.context.annotation.Primary;
 
 import java.io.File;
+import java.lang.management.ManagementFactory;
+import java.net.URI;
+import java.nio.file.Paths;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
 
 @SpringBootApplication
-@EnableAsync
 public class Application implements ApplicationRunner {
 
     private static final Logger log = LoggerFactory.getLogger(Application.class);
     public static final String LIMIT_OPTION = "limit";
+    public static final String MMAP_OPTION = "mmap";
+    public static final String SNAPSHOT_OPTION = "snapshot";
+    public static final String WATCH_OPTION = "watch";
+    public static final String TAIL_OPTION = "tail";
+    public static final String CACHE_OPTION = "cache";
+    public static final String ENGINE_OPTION = "engine";
+    public static final String SHARD_OPTION = "shard";
+    public static final String SHARDS_OPTION = "shards";
+    public static final String BUDGET_OPTION = "budget";
+    public static final Set<String> OPTIONS = Set.of(LIMIT_OPTION, MMAP_OPTION, SNAPSHOT_OPTION, WATCH_OPTION, TAIL_OPTION,
+            CACHE_OPTION, ENGINE_OPTION, SHARD_OPTION, SHARDS_OPTION, BUDGET_OPTION);
+    private static final Pattern SHARD_PATTERN = Pattern.compile("([1-9][0-9]*)/([1-9][0-9]*)");
     public static final String DEFAULT_INPUT_FILE = "test.txt";
 
     private final IndexSearchServiceImpl searchService;
+    private final CachingSearchService searchCache;
+    private final IndexLoader indexLoader;
+    private final ShardCoordinator coordinator;
+    private final ApplicationContext applicationContext;
 
-    public Application(IndexSearchServiceImpl searchService) {
+    public Application(IndexSearchServiceImpl searchService, CachingSearchService searchCache, IndexLoader indexLoader,
+                       ShardCoordinator coordinator, ApplicationContext applicationContext) {
         this.searchService = searchService;
+        this.searchCache = searchCache;
+        this.indexLoader = indexLoader;
+        this.coordinator = coordinator;
+        this.applicationContext = applicationContext;
     }
 
     public static void main(String[] args) {
@@ -39,31 +65,81 @@ public class Application implements ApplicationRunner {
         log.info("Current directory: {}", System.getProperty("user.dir"));
         String fileName = DEFAULT_INPUT_FILE;
         validateArgs(args);
+        List<String> shards = args.getOptionValues(SHARDS_OPTION);
+        if (shards != null) {
+            coordinator.configure(shardUris(shards.get(0)));
+            log.info("Coordinator of shards {}", coordinator.getShardUris());
+            return;
+        }
         if (args.getNonOptionArgs().isEmpty()) {
             log.info("No args - use default file '{}'", fileName);
         } else {
             fileName = args.getNonOptionArgs().get(0);
         }
         List<String> limit = args.getOptionValues(LIMIT_OPTION);
-        if (limit == null) {
+        List<String> budget = args.getOptionValues(BUDGET_OPTION);
+        if (budget != null) {
+            long memoryBudget = Long.parseLong(budget.get(0));
+            searchService.setMemoryBudget(memoryBudget);
+            log.info("Phrases are indexed while the index takes less than about {} bytes", memoryBudget);
+        } else if (limit == null) {
             log.info("'-limit' option not set - will be no limit to length of indexed phrases");
         } else {
             int maxPhraseLength = Integer.parseInt(limit.get(0));
             searchService.setMaxPhraseLengthToIndex(maxPhraseLength);
             log.info("Maximum length indexed phrases is set to {}", maxPhraseLength);
         }
-        SourceText.load(fileName);
-        searchService.index();
+        List<String> engineOption = args.getOptionValues(ENGINE_OPTION);
+        SearchEngine engine = engineOption == null ? SearchEngine.MAP : SearchEngine.of(engineOption.get(0)).orElseThrow();
+        SearchService engineService = applicationContext.getBean(engine.type());
+        searchCache.setDelegate(engineService);
+        indexLoader.setEngine(engineService);
+        log.info("Search engine is '{}' ({})", engine.optionValue(), engine.type().getSimpleName());
+        List<String> cache = args.getOptionValues(CACHE_OPTION);
+        if (cache != null) {
+            searchCache.setMaximumWeight(Long.parseLong(cache.get(0)));
+        }
+        log.info("Search results cache holds up to about {} bytes of line numbers", searchCache.getMaximumWeight());
+        List<String> snapshot = args.getOptionValues(SNAPSHOT_OPTION);
+        indexLoader.configure(fileName, args.containsOption(MMAP_OPTION), snapshot == null ? null : Paths.get(snapshot.get(0)),
+                args.containsOption(TAIL_OPTION));
+        List<String> shard = args.getOptionValues(SHARD_OPTION);
+        if (shard != null) {
+            Matcher shardMatcher = SHARD_PATTERN.matcher(shard.get(0));
+            shardMatcher.matches();
+            indexLoader.configureShard(Integer.parseInt(shardMatcher.group(1)), Integer.parseInt(shardMatcher.group(2)));
+        }
+        long heapBefore = usedHeapAfterGc();
+        long start = System.currentTimeMillis();
+        int lines = indexLoader.load();
+        log.info("Engine '{}' loaded {} lines in {}ms, text and index take {} MB of heap", engine.optionValue(), lines,
+                System.currentTimeMillis() - start, (usedHeapAfterGc() - heapBefore) / (1024 * 1024));
+        if (args.containsOption(WATCH_OPTION)) {
+            indexLoader.watch();
+        }
+        if (args.containsOption(TAIL_OPTION)) {
+            indexLoader.startTailing();
+        }
     }
 
-    @Bean()
-    public TaskExecutor getAsyncExecutor() {
-        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
-        executor.setCorePoolSize(10);
-        executor.setMaxPoolSize(100);
-        executor.setWaitForTasksToCompleteOnShutdown(true);
-        executor.setThreadNamePrefix("Async-");
-        return executor;
+    private static List<URI> shardUris(String shards) {
+        return Arrays.stream(shards.split(",")).map(String::strip).map(URI::create).collect(Collectors.toList());
+    }
+
+    private static long usedHeapAfterGc() {
+        System.gc();
+        return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+    }
+
+    @Bean
+    @Primary
+    public static CachingSearchService cachingSearchService(IndexSearchServiceImpl searchService) {
+        return new CachingSearchService(searchService);
+    }
+
+    @Bean
+    public ByteBufferHttpMessageConverter byteBufferHttpMessageConverter() {
+        return new ByteBufferHttpMessageConverter();
     }
 
     private void validateArgs(ApplicationArguments args) {
@@ -80,12 +156,79 @@ public class Application implements ApplicationRunner {
                 System.out.printf("Source file '%s' don't exist!%n", fileName);
                 usage();
             }
+            if (new File(fileName).isDirectory() && (args.containsOption(TAIL_OPTION)
+                    || args.containsOption(SNAPSHOT_OPTION) || args.containsOption(SHARD_OPTION))) {
+                System.out.println("Directory of documents can't be used with '--tail', '--snapshot=file' or '--shard=k/n'");
+                usage();
+            }
+        }
+        if (!OPTIONS.containsAll(optionNames)) {
+            System.out.println("Only '--limit=n', '--budget=n', '--mmap', '--snapshot=file', '--watch', '--tail', '--cache=n', "
+                    + "'--engine=name', '--shard=k/n' and '--shards=urls' options are allowed!");
+            usage();
+        }
+        List<String> shards = args.getOptionValues(SHARDS_OPTION);
+        if (shards != null) {
+            if (optionNames.size() > 1 || !nonOptionArgs.isEmpty()) {
+                System.out.println("Option '--shards=urls' can't be used with a source file or other options");
+                usage();
+            }
+            if (shards.size() != 1 || !validShardUris(shards.get(0))) {
+                System.out.println("Option '--shards=urls' needs comma separated http URLs of shards, in order of their numbers");
+                usage();
+            }
         }
-        if (!optionNames.isEmpty()) {
-            if (!(optionNames.size() == 1 && optionNames.contains(LIMIT_OPTION))) {
-                System.out.println("Only '--limit=n' option is allowed!");
+        List<String> shard = args.getOptionValues(SHARD_OPTION);
+        if (shard != null) {
+            Matcher shardMatcher = shard.size() == 1 ? SHARD_PATTERN.matcher(shard.get(0)) : null;
+            if (shardMatcher == null || !shardMatcher.matches()
+                    || Integer.parseInt(shardMatcher.group(1)) > Integer.parseInt(shardMatcher.group(2))) {
+                System.out.println("In option '--shard=k/n' k and n have to be integers and 1 <= k <= n");
                 usage();
             }
+            if (args.containsOption(TAIL_OPTION) || args.containsOption(SNAPSHOT_OPTION)) {
+                System.out.println("Option '--shard=k/n' can't be used with '--tail' or '--snapshot=file'");
+                usage();
+            }
+        }
+        for (String flag : List.of(MMAP_OPTION, WATCH_OPTION, TAIL_OPTION)) {
+            if (args.containsOption(flag) && !args.getOptionValues(flag).isEmpty()) {
+                System.out.printf("Option '--%s' don't take a value!%n", flag);
+                usage();
+            }
+        }
+        List<String> snapshot = args.getOptionValues(SNAPSHOT_OPTION);
+        if (snapshot != null && (snapshot.size() != 1 || snapshot.get(0).isBlank())) {
+            System.out.println("Option '--snapshot=file' needs exactly one file name!");
+            usage();
+        }
+        List<String> engine = args.getOptionValues(ENGINE_OPTION);
+        if (engine != null && (engine.size() != 1 || SearchEngine.of(engine.get(0)).isEmpty())) {
+            System.out.printf("Option '--engine=name' needs one of: %s%n", SearchEngine.optionValues());
+            usage();
+        }
+        boolean mapEngine = engine == null || SearchEngine.of(engine.get(0)).orElseThrow() == SearchEngine.MAP;
+        List<String> budget = args.getOptionValues(BUDGET_OPTION);
+        if (!mapEngine && (limit != null || snapshot != null || budget != null)) {
+            System.out.println("Options '--limit=n', '--budget=n' and '--snapshot=file' are supported only by '--engine=map'");
+            usage();
+        }
+        if (budget != null) {
+            if (budget.size() != 1 || !StringUtils.isNumeric(budget.get(0)) || Long.parseLong(budget.get(0)) <= 0) {
+                System.out.println("In option '--budget=n' n have to be integer >= 1");
+                usage();
+            }
+            if (limit != null || snapshot != null) {
+                System.out.println("Option '--budget=n' can't be used with '--limit=n' or '--snapshot=file'");
+                usage();
+            }
+        }
+        List<String> cache = args.getOptionValues(CACHE_OPTION);
+        if (cache != null && (cache.size() != 1 || !StringUtils.isNumeric(cache.get(0)))) {
+            System.out.println("In option '--cache=n' n have to be integer >= 0");
+            usage();
+        }
+        if (limit != null) {
             if (limit.size() > 1) {
                 System.out.println("Only one value of '--limit=n' option is allowed!");
                 usage();
@@ -98,18 +241,51 @@ public class Application implements ApplicationRunner {
         }
     }
 
+    private static boolean validShardUris(String shards) {
+        try {
+            return shardUris(shards).stream().allMatch(uri -> uri.getHost() != null
+                    && ("http".equals(uri.getScheme()) || "https".equals(uri.getScheme())));
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+    }
+
     private void usage() {
         System.out.printf("""
 Usage:
-    java -jar getindata-linserver-*.jar --limit=n fileName
+    java -jar getindata-linserver-*.jar --limit=n --budget=n --mmap --snapshot=indexFile --watch --tail --cache=n --engine=name --shard=k/n fileName
+    java -jar getindata-linserver-*.jar --shards=url1,url2,...
 Where:
-    fileName - optional name of file with text (if missing default '%1$s' is used)
+    fileName - optional name of file with text (if missing default '%1$s' is used) or of directory whose files
+               are served as documents named after them, all indexed together
     --limit - optional limit to length of indexed phrases (if missing it means no limit)
+    --budget - optional, instead of --limit: about how many bytes of heap the phrase index may take. All words are
+               indexed, longer phrases only after the most frequent shorter ones while they fit
+    --mmap - optional, memory map the file instead of reading it on heap (lines are decoded on request)
+    --snapshot - optional file with saved index. Used on start when it was built from the same file and limit,
+                 otherwise index is built and saved there
+    --watch - optional, reload text and index in background whenever the file changes
+              (reload can be also requested with 'POST /admin/reload')
+    --tail - optional, for growing files: every second only newly appended complete lines are read and indexed,
+             numbers of already served lines don't change (implies --mmap, unterminated last line waits for its end)
+    --cache - optional size in bytes of cache of search results (default %2$d, 0 disables it),
+              hit and miss counts are served by 'GET /admin/cache'
+    --engine - optional search engine: %3$s (default map). Build time and heap taken by text and index are logged
+    --shard - optional, serve only k-th of n equal ranges of lines of the file (numbered from 1 within the range),
+              range is served by 'GET /admin/shard'. Can't be used with --tail and --snapshot
+    --shards - run as coordinator of shards started with '--shard=1/n' ... '--shard=n/n' on the same file
+               and listening on the given URLs: searches go to all of them, lines to the one that has them
 Examples:
     java -jar getindata-linserver-*.jar                     ['%1$s' as input and no limit of phrase length] 
     java -jar getindata-linserver-*.jar  small.txt          ['small.txt' as input and no limit of phrase length] 
     java -jar getindata-linserver-*.jar --limit=2 small.txt ['small.txt' as input and limit of phrase length is set to 2] 
-                """, DEFAULT_INPUT_FILE);
+    java -jar getindata-linserver-*.jar --budget=268435456 small.txt ['small.txt' as input, phrase index takes up to 256 MB] 
+    java -jar getindata-linserver-*.jar --mmap small.txt    ['small.txt' is memory mapped and no limit of phrase length] 
+    java -jar getindata-linserver-*.jar --snapshot=small.idx small.txt ['small.txt' as input, index kept in 'small.idx'] 
+    java -jar getindata-linserver-*.jar --mmap texts        [files of directory 'texts' as documents, memory mapped] 
+    java -jar getindata-linserver-*.jar --shard=2/2 small.txt  ['small.txt' as input, only its second half is served] 
+    java -jar getindata-linserver-*.jar --shards=http://localhost:8081,http://localhost:8082 [coordinator of 2 shards] 
+                """, DEFAULT_INPUT_FILE, CachingSearchService.DEFAULT_MAXIMUM_WEIGHT, SearchEngine.optionValues());
         System.exit(1);
     }
 }
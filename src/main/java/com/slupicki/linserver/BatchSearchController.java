@@ -0,0 +1,174 @@
+package com.slupicki.linserver;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.server.ResponseStatusException;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Searches many phrases in one request. The body is a JSON array or NDJSON (one value per line), each value a phrase
+ * or an object with a {@code phrase} field. Phrases are searched in parallel on the common fork/join pool, at most
+ * {@link #MAX_IN_FLIGHT} ahead of the one being written, and at most {@link #MAX_LIMIT} lines each, so a batch holds
+ * a bounded number of results at a time. Phrases differing only in case searched at the same time are searched once.
+ * Results are written in request order as soon as each is ready: a JSON array for a JSON request, one line per phrase
+ * for NDJSON. A phrase whose search failed gets an {@code error} instead of its lines, as the status is already sent.
+ */
+@RestController
+public class BatchSearchController {
+
+    static final int MAX_PHRASES = 10_000;
+    static final int DEFAULT_LIMIT = 100;
+    static final int MAX_LIMIT = 1000;
+    static final int MAX_IN_FLIGHT = Math.max(2, ForkJoinPool.getCommonPoolParallelism());
+
+    private final Logger log = LoggerFactory.getLogger(BatchSearchController.class);
+
+    private final SearchService searchService;
+    private final ShardCoordinator coordinator;
+    private final ObjectMapper objectMapper;
+    private final SearchMetrics searchMetrics;
+
+    public BatchSearchController(SearchService searchService, ShardCoordinator coordinator, ObjectMapper objectMapper,
+                                 SearchMetrics searchMetrics) {
+        this.searchService = searchService;
+        this.coordinator = coordinator;
+        this.objectMapper = objectMapper;
+        this.searchMetrics = searchMetrics;
+    }
+
+    @PostMapping(value = "/search/batch", consumes = {MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_NDJSON_VALUE})
+    public void searchPhrases(@RequestParam(value = "limit", required = false) Integer limit,
+                              @RequestParam(value = "count", defaultValue = "false") boolean count,
+                              HttpServletRequest request, HttpServletResponse response) throws IOException {
+        if (limit != null && (limit < 1 || limit > MAX_LIMIT)) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Limit has to be from 1 to " + MAX_LIMIT);
+        }
+        int phraseLimit = limit != null ? limit : DEFAULT_LIMIT;
+        if (coordinator.isEnabled()) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Batch search is not served by a coordinator");
+        }
+        List<String> phrases = phrases(request);
+        log.debug("Request to search {} phrases", phrases.size());
+        // searches of phrases submitted but not written yet, by lower case phrase, and the last position using each
+        Map<String, CompletableFuture<Map<String, Object>>> inFlight = new HashMap<>();
+        Map<String, Integer> lastPositions = new HashMap<>();
+        List<CompletableFuture<Map<String, Object>>> ordered = new ArrayList<>(phrases.size());
+        boolean ndjson = MediaType.APPLICATION_NDJSON.isCompatibleWith(MediaType.parseMediaType(request.getContentType()));
+        response.setContentType(ndjson ? MediaType.APPLICATION_NDJSON_VALUE : MediaType.APPLICATION_JSON_VALUE);
+        OutputStream out = response.getOutputStream();
+        try (JsonGenerator generator = objectMapper.getFactory().createGenerator(out)) {
+            generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+            generator.setRootValueSeparator(null);
+            if (!ndjson) {
+                generator.writeStartArray();
+            }
+            for (int idx = 0; idx < phrases.size(); idx++) {
+                while (ordered.size() < phrases.size() && ordered.size() < idx + MAX_IN_FLIGHT) {
+                    String phrase = phrases.get(ordered.size());
+                    String key = phrase.toLowerCase(SearchService.LOCALE_PL);
+                    lastPositions.put(key, ordered.size());
+                    ordered.add(inFlight.computeIfAbsent(key, ignored -> CompletableFuture.supplyAsync(
+                            () -> search(phrase, phraseLimit, count), ForkJoinPool.commonPool())));
+                }
+                String key = phrases.get(idx).toLowerCase(SearchService.LOCALE_PL);
+                Map<String, Object> result = new LinkedHashMap<>();
+                result.put("phrase", phrases.get(idx));
+                try {
+                    result.putAll(ordered.get(idx).join());
+                } catch (CompletionException e) {
+                    log.warn("Search of '{}' in a batch failed", phrases.get(idx), e.getCause());
+                    result.put("error", String.valueOf(e.getCause().getMessage()));
+                }
+                ordered.set(idx, null);
+                if (lastPositions.get(key) == idx) {
+                    inFlight.remove(key);
+                    lastPositions.remove(key);
+                }
+                generator.writeObject(result);
+                if (ndjson) {
+                    generator.writeRaw('\n');
+                }
+            }
+            if (!ndjson) {
+                generator.writeEndArray();
+            }
+        }
+    }
+
+    private List<String> phrases(HttpServletRequest request) throws IOException {
+        List<JsonNode> values = new ArrayList<>();
+        try (MappingIterator<JsonNode> iterator = objectMapper.readerFor(JsonNode.class).readValues(request.getInputStream())) {
+            while (iterator.hasNextValue()) {
+                values.add(iterator.nextValue());
+            }
+        } catch (IOException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Malformed batch: " + e.getMessage());
+        }
+        if (values.size() == 1 && values.get(0).isArray()) {
+            List<JsonNode> elements = new ArrayList<>();
+            values.get(0).forEach(elements::add);
+            values = elements;
+        }
+        if (values.size() > MAX_PHRASES) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "At most " + MAX_PHRASES + " phrases in one batch");
+        }
+        List<String> phrases = new ArrayList<>(values.size());
+        for (JsonNode value : values) {
+            JsonNode phrase = value.isObject() ? value.path("phrase") : value;
+            if (!phrase.isTextual()) {
+                throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Expected a phrase or {\"phrase\": ...}, got " + value);
+            }
+            phrases.add(phrase.textValue());
+        }
+        return phrases;
+    }
+
+    private Map<String, Object> search(String phrase, int limit, boolean count) {
+        SearchMetrics.Search search = searchMetrics.find(searchService, phrase);
+        try {
+            return search(search, limit, count);
+        } finally {
+            search.finish();
+        }
+    }
+
+    private static Map<String, Object> search(Matches matches, int limit, boolean count) {
+        SourceText.Lines text = matches.text();
+        Map<String, Object> result = new LinkedHashMap<>();
+        if (count) {
+            int matched = 0;
+            while (matches.next() != Matches.NO_MORE) {
+                matched++;
+            }
+            result.put("count", matched);
+            return result;
+        }
+        List<String> lines = new ArrayList<>();
+        for (int line; lines.size() < limit && (line = matches.next()) != Matches.NO_MORE; ) {
+            lines.add(text instanceof Corpus ? ((Corpus) text).label(line) + text.get(line) : text.get(line));
+        }
+        result.put("lines", lines);
+        return result;
+    }
+}
@@ -0,0 +1,77 @@
+package com.slupicki.linserver;
+
+import org.springframework.http.HttpInputMessage;
+import org.springframework.http.HttpOutputMessage;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.AbstractHttpMessageConverter;
+import org.springframework.http.converter.HttpMessageNotReadableException;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Writes UTF-8 line bytes ({@link ByteBuffer} or {@code ByteBuffer[]} joined with '\n') to the response as they are,
+ * so lines served from a mapped file are never decoded to String and encoded back.
+ */
+public class ByteBufferHttpMessageConverter extends AbstractHttpMessageConverter<Object> {
+
+    static final ByteBuffer NEW_LINE = ByteBuffer.wrap(new byte[]{'\n'}).asReadOnlyBuffer();
+
+    public ByteBufferHttpMessageConverter() {
+        super(StandardCharsets.UTF_8, MediaType.TEXT_PLAIN, MediaType.ALL);
+    }
+
+    @Override
+    protected boolean supports(Class<?> clazz) {
+        return ByteBuffer.class.isAssignableFrom(clazz) || ByteBuffer[].class == clazz;
+    }
+
+    @Override
+    protected boolean canRead(MediaType mediaType) {
+        return false;
+    }
+
+    @Override
+    protected Object readInternal(Class<?> clazz, HttpInputMessage inputMessage) {
+        throw new HttpMessageNotReadableException("Reading " + clazz + " is not supported", inputMessage);
+    }
+
+    @Override
+    protected Long getContentLength(Object body, MediaType contentType) {
+        if (body instanceof ByteBuffer) {
+            return (long) ((ByteBuffer) body).remaining();
+        }
+        ByteBuffer[] buffers = (ByteBuffer[]) body;
+        long length = Math.max(0, buffers.length - 1);
+        for (ByteBuffer buffer : buffers) {
+            length += buffer.remaining();
+        }
+        return length;
+    }
+
+    @Override
+    protected void writeInternal(Object body, HttpOutputMessage outputMessage) throws IOException {
+        WritableByteChannel channel = Channels.newChannel(outputMessage.getBody());
+        if (body instanceof ByteBuffer) {
+            write(channel, (ByteBuffer) body);
+            return;
+        }
+        ByteBuffer[] buffers = (ByteBuffer[]) body;
+        for (int i = 0; i < buffers.length; i++) {
+            if (i > 0) {
+                write(channel, NEW_LINE);
+            }
+            write(channel, buffers[i]);
+        }
+    }
+
+    static void write(WritableByteChannel channel, ByteBuffer buffer) throws IOException {
+        ByteBuffer toWrite = buffer.duplicate();
+        while (toWrite.hasRemaining()) {
+            channel.write(toWrite);
+        }
+    }
+}
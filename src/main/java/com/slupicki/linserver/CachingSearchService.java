@@ -0,0 +1,170 @@
+package com.slupicki.linserver;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import com.github.benmanes.caffeine.cache.stats.ConcurrentStatsCounter;
+import com.github.benmanes.caffeine.cache.stats.StatsCounter;
+
+import java.util.Arrays;
+
+/**
+ * Keeps matching line numbers of recent searches of any {@link SearchService} in a bounded cache (W-TinyLFU
+ * eviction, weighed by approximate bytes of phrase and line numbers), misses included. Phrases differing only in case
+ * share an entry. Only matches read to the end are cached, so callers stopping early never pay for the rest. Indexing
+ * replaces the whole cache, so a search still running on the previous index can only fill the discarded one.
+ */
+public class CachingSearchService implements SearchService {
+
+    public static final long DEFAULT_MAXIMUM_WEIGHT = 32L * 1024 * 1024;
+
+    private volatile SearchService delegate;
+    private final StatsCounter statsCounter = new ConcurrentStatsCounter();
+    private volatile long maximumWeight;
+    private volatile Cache<String, CachedLines> cache;
+
+    public CachingSearchService(SearchService delegate) {
+        this(delegate, DEFAULT_MAXIMUM_WEIGHT);
+    }
+
+    public CachingSearchService(SearchService delegate, long maximumWeight) {
+        this.delegate = delegate;
+        this.maximumWeight = maximumWeight;
+        this.cache = newCache();
+    }
+
+    @Override
+    public Matches find(String phrase) {
+        if (maximumWeight == 0) {
+            return delegate.find(phrase);
+        }
+        Cache<String, CachedLines> current = cache;
+        String key = phrase.toLowerCase(LOCALE_PL);
+        CachedLines cached = current.getIfPresent(key);
+        if (cached != null) {
+            return Matches.of(cached.text, cached.lines);
+        }
+        return new CachingMatches(delegate.find(phrase), current, key, maximumWeight / 4);
+    }
+
+    @Override
+    public void index(SourceText.Lines text) {
+        delegate.index(text);
+        invalidateAll();
+    }
+
+    @Override
+    public void append(SourceText.Lines text, int fromLine) {
+        delegate.append(text, fromLine);
+        invalidateAll();
+    }
+
+    @Override
+    public long indexEntries() {
+        return delegate.indexEntries();
+    }
+
+    public SearchService getDelegate() {
+        return delegate;
+    }
+
+    public void setDelegate(SearchService delegate) {
+        this.delegate = delegate;
+        invalidateAll();
+    }
+
+    public void invalidateAll() {
+        cache = newCache();
+    }
+
+    public long getMaximumWeight() {
+        return maximumWeight;
+    }
+
+    public void setMaximumWeight(long maximumWeight) {
+        this.maximumWeight = maximumWeight;
+        invalidateAll();
+    }
+
+    public CacheStats stats() {
+        return statsCounter.snapshot();
+    }
+
+    public long size() {
+        return cache.estimatedSize();
+    }
+
+    private Cache<String, CachedLines> newCache() {
+        return Caffeine.newBuilder()
+                .maximumWeight(maximumWeight)
+                .<String, CachedLines>weigher((phrase, cached) -> 2 * phrase.length() + 4 * cached.lines.length)
+                .recordStats(() -> statsCounter)
+                .build();
+    }
+
+    private static final class CachedLines {
+        private final SourceText.Lines text;
+        private final int[] lines;
+
+        private CachedLines(SourceText.Lines text, int[] lines) {
+            this.text = text;
+            this.lines = lines;
+        }
+    }
+
+    private static final class CachingMatches implements Matches {
+        private final Matches matches;
+        private final Cache<String, CachedLines> cache;
+        private final String key;
+        private final long maxCount;
+        private int[] lines = new int[16];
+        private int count;
+
+        private CachingMatches(Matches matches, Cache<String, CachedLines> cache, String key, long maxCount) {
+            this.matches = matches;
+            this.cache = cache;
+            this.key = key;
+            this.maxCount = maxCount;
+        }
+
+        @Override
+        public SourceText.Lines text() {
+            return matches.text();
+        }
+
+        @Override
+        public int next() {
+            int line = matches.next();
+            if (line == NO_MORE) {
+                if (lines != null) {
+                    cache.put(key, new CachedLines(matches.text(), Arrays.copyOf(lines, count)));
+                    lines = null;
+                }
+                return NO_MORE;
+            }
+            if (lines == null || count == maxCount) {
+                lines = null;
+                return line;
+            }
+            if (count == lines.length) {
+                lines = Arrays.copyOf(lines, count * 2);
+            }
+            lines[count++] = line;
+            return line;
+        }
+
+        /**
+         * Skipped matches are not recorded, so the result is no longer complete and is not cached.
+         */
+        @Override
+        public int advance(int target) {
+            lines = null;
+            return matches.advance(target);
+        }
+
+        @Override
+        public int verified() {
+            return matches.verified();
+        }
+    }
+}
@@ -0,0 +1,145 @@
+package com.slupicki.linserver;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Named documents served as one text: lines of all documents follow each other, so a single index with a single
+ * term dictionary and posting lists covers all of them and a document is just a range of line numbers.
+ */
+public final class Corpus implements SourceText.Lines {
+
+    private static final Logger log = LoggerFactory.getLogger(Corpus.class);
+
+    private final String[] names;
+    private final SourceText.Lines[] documents;
+    private final int[] starts;
+    private final Map<String, Integer> numbers = new HashMap<>();
+
+    Corpus(List<String> names, List<SourceText.Lines> documents) {
+        this.names = names.toArray(String[]::new);
+        this.documents = documents.toArray(SourceText.Lines[]::new);
+        this.starts = new int[this.documents.length + 1];
+        for (int doc = 0; doc < this.documents.length; doc++) {
+            starts[doc + 1] = Math.addExact(starts[doc], this.documents[doc].size());
+            numbers.put(this.names[doc], doc);
+        }
+    }
+
+    /**
+     * Every regular file of the directory is a document named after the file, documents are ordered by name.
+     */
+    public static Corpus read(Path directory, boolean mapped) throws IOException {
+        List<Path> files;
+        try (Stream<Path> paths = Files.list(directory)) {
+            files = paths.filter(Files::isRegularFile).sorted().collect(Collectors.toList());
+        }
+        List<String> names = new ArrayList<>();
+        List<SourceText.Lines> documents = new ArrayList<>();
+        for (Path file : files) {
+            names.add(file.getFileName().toString());
+            documents.add(mapped ? SourceText.readMapped(file.toString()) : SourceText.read(file.toString()));
+        }
+        Corpus corpus = new Corpus(names, documents);
+        log.info("Corpus '{}' has {} documents, {} lines", directory, names.size(), corpus.size());
+        return corpus;
+    }
+
+    public int documentCount() {
+        return names.length;
+    }
+
+    public String name(int doc) {
+        return names[doc];
+    }
+
+    /**
+     * Number of the document with this name or -1.
+     */
+    public int document(String name) {
+        return numbers.getOrDefault(name, -1);
+    }
+
+    /**
+     * Number of the document the line belongs to.
+     */
+    public int documentOf(int line) {
+        int doc = Arrays.binarySearch(starts, line);
+        if (doc < 0) {
+            return -doc - 2;
+        }
+        while (starts[doc + 1] == line) {
+            doc++;
+        }
+        return doc;
+    }
+
+    /**
+     * The first line of the document, counted from 0 in the whole corpus.
+     */
+    public int start(int doc) {
+        return starts[doc];
+    }
+
+    /**
+     * The line after the last line of the document.
+     */
+    public int end(int doc) {
+        return starts[doc + 1];
+    }
+
+    /**
+     * Number (counted from 0) in the whole corpus of the line with number {@code line} (counted from 1) of the
+     * document.
+     */
+    public int line(String name, int line) {
+        int doc = document(name);
+        if (doc < 0 || line < 1 || line > end(doc) - start(doc)) {
+            throw new NotFoundException();
+        }
+        return start(doc) + line - 1;
+    }
+
+    /**
+     * Prefix telling where the line comes from: {@code doc:line:}, like {@code grep -n} prints for many files.
+     */
+    public String label(int line) {
+        int doc = documentOf(line);
+        return names[doc] + ":" + (line - starts[doc] + 1) + ":";
+    }
+
+    @Override
+    public int size() {
+        return starts[documents.length];
+    }
+
+    @Override
+    public String get(int n) {
+        int doc = documentOf(n);
+        return documents[doc].get(n - starts[doc]);
+    }
+
+    @Override
+    public String lowerCase(int n) {
+        int doc = documentOf(n);
+        return documents[doc].lowerCase(n - starts[doc]);
+    }
+
+    @Override
+    public ByteBuffer bytes(int n) {
+        int doc = documentOf(n);
+        return documents[doc].bytes(n - starts[doc]);
+    }
+}
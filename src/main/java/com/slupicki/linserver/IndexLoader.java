@@ -0,0 +1,254 @@
+package com.slupicki.linserver;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Loads the source file and builds its index. A reload reads the file and builds the index aside, then publishes
+ * both, so searches in flight keep using the generation they started with and never see a half built index.
+ * In tail mode the file is polled and only lines appended since the last check are read and indexed.
+ * As shard {@code k} of {@code n} only the k-th of n equal, contiguous ranges of lines is read and indexed.
+ * A directory is read as a {@link Corpus} of its files indexed together.
+ */
+@Service
+public class IndexLoader {
+
+    private static final Logger log = LoggerFactory.getLogger(IndexLoader.class);
+
+    static final long TAIL_INTERVAL_MS = 1000;
+
+    private final IndexSearchServiceImpl indexSearchService;
+    private final CachingSearchService searchCache;
+
+    private final ScheduledExecutorService reloadExecutor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "index-reload");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final AtomicReference<CompletableFuture<Integer>> queuedReload = new AtomicReference<>();
+
+    private volatile SearchService engine;
+    private volatile String fileName;
+    private volatile boolean mapped;
+    private volatile Path snapshotFile;
+    private volatile boolean tail;
+    private volatile WatchService watchService;
+    private volatile int shard = 1;
+    private volatile int shards = 1;
+    private volatile int firstLine;
+    private volatile long loadNanos;
+    private SourceText.Lines text;
+    private Object fileKey;
+
+    public IndexLoader(IndexSearchServiceImpl indexSearchService, CachingSearchService searchCache) {
+        this.indexSearchService = indexSearchService;
+        this.searchCache = searchCache;
+        this.engine = indexSearchService;
+    }
+
+    public void setEngine(SearchService engine) {
+        this.engine = engine;
+    }
+
+    public void configure(String fileName, boolean mapped, Path snapshotFile, boolean tail) {
+        this.fileName = fileName;
+        this.mapped = mapped || tail;
+        this.snapshotFile = snapshotFile;
+        this.tail = tail;
+    }
+
+    public void configureShard(int shard, int shards) {
+        this.shard = shard;
+        this.shards = shards;
+    }
+
+    public int getShard() {
+        return shard;
+    }
+
+    public int getShards() {
+        return shards;
+    }
+
+    /**
+     * Number (counted from 0) in the whole file of the first line served by this node.
+     */
+    public int getFirstLine() {
+        return firstLine;
+    }
+
+    /**
+     * How long the last full load took, reading included.
+     */
+    public long getLoadNanos() {
+        return loadNanos;
+    }
+
+    public synchronized int load() throws IOException {
+        long start = System.nanoTime();
+        Path path = Paths.get(fileName);
+        Object newFileKey = fileKey(path);
+        int newFirstLine = 0;
+        SourceText.Lines newText;
+        if (tail) {
+            newText = readCompleteLines(path);
+        } else if (Files.isDirectory(path)) {
+            newText = Corpus.read(path, mapped);
+        } else if (shards > 1) {
+            SourceText.Lines allLines = mapped ? SourceText.readMapped(fileName) : null;
+            int fileLines = mapped ? allLines.size() : SourceText.countLines(fileName);
+            newFirstLine = shardStart(fileLines, shard - 1);
+            int toLine = shardStart(fileLines, shard);
+            newText = mapped ? SourceText.slice(allLines, newFirstLine, toLine) : SourceText.read(fileName, newFirstLine, toLine);
+            log.info("Shard {} of {} serves lines {}-{} of {}", shard, shards, newFirstLine + 1, toLine, fileLines);
+        } else {
+            newText = mapped ? SourceText.readMapped(fileName) : SourceText.read(fileName);
+        }
+        if (snapshotFile == null) {
+            engine.index(newText);
+        } else {
+            indexWithSnapshot(newText);
+        }
+        SourceText.publish(newText);
+        searchCache.invalidateAll();
+        text = newText;
+        firstLine = newFirstLine;
+        fileKey = newFileKey;
+        loadNanos = System.nanoTime() - start;
+        return newText.size();
+    }
+
+    public synchronized int append() throws IOException {
+        Path path = Paths.get(fileName);
+        MappedLines latest = (MappedLines) text;
+        if (!Objects.equals(fileKey(path), fileKey) || Files.size(path) < latest.sizeInBytes()) {
+            log.info("'{}' was replaced or truncated - loading it again", fileName);
+            return load();
+        }
+        MappedLines appended = latest.append();
+        text = appended;
+        if (appended.size() == latest.size()) {
+            return 0;
+        }
+        engine.append(appended, latest.size());
+        SourceText.publish(appended);
+        searchCache.invalidateAll();
+        return appended.size() - latest.size();
+    }
+
+    public void startTailing() {
+        reloadExecutor.scheduleWithFixedDelay(() -> {
+            try {
+                append();
+            } catch (Exception e) {
+                log.error("Reading lines appended to '{}' failed - will retry", fileName, e);
+            }
+        }, TAIL_INTERVAL_MS, TAIL_INTERVAL_MS, TimeUnit.MILLISECONDS);
+        log.info("Tailing '{}' every {}ms", fileName, TAIL_INTERVAL_MS);
+    }
+
+    public CompletableFuture<Integer> reload() {
+        while (true) {
+            CompletableFuture<Integer> queued = queuedReload.get();
+            if (queued != null) {
+                return queued;
+            }
+            CompletableFuture<Integer> reload = new CompletableFuture<>();
+            if (queuedReload.compareAndSet(null, reload)) {
+                reloadExecutor.execute(() -> {
+                    queuedReload.compareAndSet(reload, null);
+                    try {
+                        reload.complete(load());
+                    } catch (Exception e) {
+                        log.error("Reload of '{}' failed - still serving previous version", fileName, e);
+                        reload.completeExceptionally(e);
+                    }
+                });
+                return reload;
+            }
+        }
+    }
+
+    public void watch() throws IOException {
+        Path file = Paths.get(fileName).toAbsolutePath();
+        watchService = FileSystems.getDefault().newWatchService();
+        Path directory = Files.isDirectory(file) ? file : file.getParent();
+        directory.register(watchService, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY,
+                StandardWatchEventKinds.ENTRY_DELETE);
+        Thread watcher = new Thread(() -> watch(watchService, file), "source-watcher");
+        watcher.setDaemon(true);
+        watcher.start();
+        log.info("Watching '{}' for changes", file);
+    }
+
+    private void watch(WatchService watchService, Path file) {
+        try {
+            while (true) {
+                WatchKey key = watchService.take();
+                for (WatchEvent<?> event : key.pollEvents()) {
+                    boolean changed = file.getFileName().equals(event.context()) || Files.isDirectory(file);
+                    if (changed && !tail) {
+                        log.info("'{}' changed - reloading", file);
+                        reload();
+                    }
+                }
+                key.reset();
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            log.info("Stopped watching '{}'", file);
+        }
+    }
+
+    private int shardStart(int fileLines, int shard) {
+        return (int) ((long) fileLines * shard / shards);
+    }
+
+    private static MappedLines readCompleteLines(Path path) throws IOException {
+        MappedLines mappedLines = MappedLines.mapCompleteLines(path);
+        log.info("Mapped {} complete lines ({} bytes) from '{}'", mappedLines.size(), mappedLines.sizeInBytes(), path);
+        return mappedLines;
+    }
+
+    private static Object fileKey(Path path) throws IOException {
+        return Files.readAttributes(path, BasicFileAttributes.class).fileKey();
+    }
+
+    private void indexWithSnapshot(SourceText.Lines text) throws IOException {
+        if (engine != indexSearchService) {
+            throw new IllegalStateException("Index snapshots are supported only by the map engine");
+        }
+        String key = IndexSnapshot.key(text, indexSearchService.getMaxPhraseLengthToIndex());
+        if (!IndexSnapshot.load(snapshotFile, key, text, indexSearchService)) {
+            indexSearchService.index(text);
+            IndexSnapshot.save(snapshotFile, key, indexSearchService);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() throws IOException {
+        reloadExecutor.shutdownNow();
+        if (watchService != null) {
+            watchService.close();
+        }
+    }
+}
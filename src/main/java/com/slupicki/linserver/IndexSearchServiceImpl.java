@@ -1,57 +1,132 @@
 package com.slupicki.linserver;
 
-import com.google.common.collect.Lists;
-import com.google.common.collect.Maps;
-import com.google.common.collect.Sets;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Service;
 
 import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.IntStream;
 
+/**
+ * Index of phrases (runs of whole words) to lines containing them. Words are numbered by a {@link TermDictionary}
+ * and phrases are keyed by hashes of their word numbers in a {@link PhraseIndex}, so neither indexing nor lookup
+ * builds strings of phrases. A {@link PhraseFilter} in front of the index rejects most phrases that are not there
+ * without reading the index. A longer phrase is looked up in chunks of indexed length and candidate lines common to
+ * all chunks are verified against the text.
+ * <p>
+ * With a memory budget all words are indexed, but a phrase of n words only if its first n-1 words are indexed and
+ * occur in at least {@code minPrefixLines[n]} lines. Thresholds are lowered band by band, so frequent prefixes -
+ * those with the longest lists to intersect and verify - get extended first, until the estimated size of the index
+ * reaches the budget. A lookup extends a chunk by one more word only while that rule says the longer phrase is
+ * indexed, so a missing key still means no match.
+ */
 @Service
 public class IndexSearchServiceImpl implements SearchService {
 
     private static final Logger log = LoggerFactory.getLogger(IndexSearchServiceImpl.class);
 
+    /**
+     * Approximate heap taken by one entry besides bytes of its lines: table slots (at most 2/3 of them are used),
+     * PostingList and headers of its arrays, bits in the filter.
+     */
+    static final int ENTRY_OVERHEAD_BYTES = 112;
+    static final int MIN_PREFIX_LINES = 2;
+    private static final int BAND_FACTOR = 4;
+
     private int maxPhraseLengthToIndex = -1;
-    private final Map<String, Set<Integer>> index = Maps.newHashMap();
+    private long memoryBudget;
+    private volatile Generation generation = new Generation(SourceText.current(), new TermDictionary(), new PhraseIndex(), 1, null);
 
-    public String search(String phrase) {
+    @Override
+    public Matches find(String phrase) {
+        Generation current = generation;
         String lowerCasePhrase = phrase.toLowerCase(LOCALE_PL);
-        String[] normalizedPhraseArray = normalizeAndSplit(phrase);
-        List<List<String>> phrasesLists = Lists.partition(Arrays.asList(normalizedPhraseArray), maxPhraseLengthToIndex);
-        Set<Integer> allMatchedLines = Sets.newHashSet();
-        for (List<String> phraseList : phrasesLists) {
-            String normalizedPhrase = String.join(" ", phraseList);
-            Set<Integer> matchedLines = index.get(normalizedPhrase);
-            if (matchedLines == null) {
-                throw new NotFoundException();
+        Tokenizer words = Tokenizer.get().words(lowerCasePhrase);
+        int[] termIds = new int[words.count()];
+        for (int word = 0; word < termIds.length; word++) {
+            termIds[word] = words.termId(current.terms, word);
+            if (termIds[word] == TermDictionary.NONE) {
+                return Matches.none(current.text);
             }
-            if (allMatchedLines.isEmpty()) {
-                allMatchedLines = matchedLines;
+        }
+        PostingList[] lookedUp = new PostingList[termIds.length];
+        int chunks = 0;
+        for (int fromWord = 0; fromWord < termIds.length; chunks++) {
+            int toWord = Math.min(fromWord + current.maxPhraseLength, termIds.length);
+            PostingList lines;
+            if (current.minPrefixLines == null) {
+                lines = current.lines(key(termIds, fromWord, toWord));
             } else {
-                allMatchedLines = Sets.intersection(allMatchedLines, matchedLines);
+                int maxToWord = toWord;
+                toWord = fromWord + 1;
+                long key = PhraseIndex.key(PhraseIndex.NO_WORDS, termIds[fromWord]);
+                lines = current.lines(key);
+                while (lines != null && toWord < maxToWord && lines.size() >= current.minPrefixLines[toWord - fromWord + 1]) {
+                    key = PhraseIndex.key(key, termIds[toWord++]);
+                    lines = current.lines(key);
+                }
             }
-            if (allMatchedLines.isEmpty()) {
-                throw new NotFoundException();
+            if (lines == null) {
+                return Matches.none(current.text);
             }
+            lookedUp[chunks] = lines;
+            fromWord = toWord;
         }
-        List<String> result = Lists.newLinkedList();
-        for (Integer matchedLine : allMatchedLines) {
-            String line = SourceText.getLine(matchedLine);
-            if (line.toLowerCase(LOCALE_PL).contains(lowerCasePhrase)) {
-                result.add(line);
+        PostingList[] chunkLines = Arrays.copyOf(lookedUp, chunks);
+        Arrays.sort(chunkLines, Comparator.comparingInt(PostingList::size));
+        PostingList.Cursor[] cursors = new PostingList.Cursor[chunks];
+        Arrays.setAll(cursors, chunk -> chunkLines[chunk].cursor());
+        int lines = current.text.size();
+        return new Matches() {
+            private int target = 0;
+            private int verified = 0;
+
+            @Override
+            public SourceText.Lines text() {
+                return current.text;
             }
-        }
-        if (result.isEmpty()) {
-            throw new NotFoundException();
-        }
-        return String.join("\n", result);
+
+            @Override
+            public int next() {
+                for (int candidate = PostingList.advanceAll(cursors, target); candidate < lines;
+                     candidate = PostingList.advanceAll(cursors, target)) {
+                    target = candidate + 1;
+                    verified++;
+                    if (current.text.lowerCase(candidate).contains(lowerCasePhrase)) {
+                        return candidate;
+                    }
+                }
+                return NO_MORE;
+            }
+
+            @Override
+            public int advance(int line) {
+                target = Math.max(target, line);
+                return next();
+            }
+
+            @Override
+            public int verified() {
+                return verified;
+            }
+        };
+    }
+
+    public PhraseIndex getIndex() {
+        return generation.index;
     }
 
-    public Map<String, Set<Integer>> getIndex() {
-        return index;
+    public TermDictionary getTerms() {
+        return generation.terms;
+    }
+
+    public int getIndexedPhraseLength() {
+        return generation.maxPhraseLength;
+    }
+
+    public void setIndex(SourceText.Lines text, TermDictionary terms, PhraseIndex index, int indexedPhraseLength) {
+        generation = new Generation(text, terms, index, indexedPhraseLength, null);
     }
 
     public int getMaxPhraseLengthToIndex() {
@@ -62,38 +137,232 @@ public class IndexSearchServiceImpl implements SearchService {
         this.maxPhraseLengthToIndex = maxPhraseLengthToIndex;
     }
 
-    public void index() {
-        index.clear();
-        ArrayList<String[]> normalizedLines = new ArrayList<>();
-        int longestPhrase = 0;
-        for (String line : SourceText.lines()) {
-            String[] normalizedLine = normalizeAndSplit(line);
-            normalizedLines.add(normalizedLine);
-            longestPhrase = Math.max(longestPhrase, normalizedLine.length);
+    public long getMemoryBudget() {
+        return memoryBudget;
+    }
+
+    /**
+     * Approximate bytes of heap the index may take, 0 to index all phrases up to the maximum length.
+     */
+    public void setMemoryBudget(long memoryBudget) {
+        this.memoryBudget = memoryBudget;
+    }
+
+    @Override
+    public void index(SourceText.Lines text) {
+        if (memoryBudget > 0) {
+            indexWithinBudget(text, memoryBudget);
+            return;
+        }
+        int lines = text.size();
+        int maxPhraseLength = maxPhraseLengthToIndex;
+        if (maxPhraseLength < 0) {
+            int longestPhrase = IntStream.range(0, lines).parallel()
+                    .map(lineNumber -> Tokenizer.get().words(text.lowerCase(lineNumber)).count())
+                    .max().orElse(0);
+            maxPhraseLength = Math.max(longestPhrase, 1);
+            log.info("The longest phrase is {}. Max indexed phrase will be {}", longestPhrase, maxPhraseLength);
+        }
+        int phraseLength = maxPhraseLength;
+        TermDictionary terms = TermDictionary.build("Phrase index words", text, 0, lines, Tokenizer::words);
+        PhraseIndex newIndex = ParallelIndexer.build("Phrase index", lines,
+                (fromLine, toLine) -> indexLines(text, terms, fromLine, toLine, phraseLength), PhraseIndex::merge).trim();
+        setIndex(text, terms, newIndex, maxPhraseLength);
+        log.info("Indexed {} phrases of {} distinct words, about {} bytes", newIndex.size(), terms.size(),
+                estimatedBytes(newIndex) + terms.sizeInBytes());
+    }
+
+    @Override
+    public void append(SourceText.Lines text, int fromLine) {
+        Generation current = generation;
+        if (current.minPrefixLines != null) {
+            // new lines move prefixes across thresholds, which would need their phrases from old lines too
+            index(text);
+            return;
+        }
+        int lines = text.size();
+        // new words and phrases are added in place while searches read the dictionary and table: they are published
+        // as they are added, and a search never takes lines beyond the text of its generation as candidates
+        TermDictionary terms = current.terms
+                .addAll(TermDictionary.build("Phrase index append words", text, fromLine, lines, Tokenizer::words));
+        PhraseIndex newPostings = ParallelIndexer.build("Phrase index append", fromLine, lines,
+                (from, to) -> indexLines(text, terms, from, to, current.maxPhraseLength), PhraseIndex::merge);
+        PhraseIndex index = current.index;
+        int phrasesBefore = index.size();
+        newPostings.forEach((key, postingList) -> index.merge(key, postingList, PostingList::addAll));
+        PhraseFilter filter = current.filter;
+        if (index.size() > filter.capacity()) {
+            // sized with room for as many keys again, so appends rebuild it ever more rarely
+            filter = PhraseFilter.of(index, index.size() * 2);
+        } else {
+            newPostings.forEach((key, postingList) -> current.filter.add(key));
         }
-        maxPhraseLengthToIndex = maxPhraseLengthToIndex < 0 ? longestPhrase : maxPhraseLengthToIndex;
-        for (int phraseLength = 1; phraseLength <= maxPhraseLengthToIndex; phraseLength++) {
-            for (int lineNumber = 0; lineNumber < normalizedLines.size(); lineNumber++) {
-                indexPhrase(normalizedLines.get(lineNumber), lineNumber, phraseLength);
+        generation = new Generation(text, terms, index, filter, current.maxPhraseLength, null);
+        log.info("Appended lines {}-{}: {} phrases, {} of them new", fromLine + 1, lines, newPostings.size(), index.size() - phrasesBefore);
+    }
+
+    @Override
+    public long indexEntries() {
+        return generation.index.size();
+    }
+
+    private void indexWithinBudget(SourceText.Lines text, long budget) {
+        TermDictionary terms = TermDictionary.build("Phrase index words", text, 0, text.size(), Tokenizer::words);
+        PhraseIndex previous = ParallelIndexer.build("Phrase index, words", text.size(),
+                (fromLine, toLine) -> indexLines(text, terms, fromLine, toLine, 1), PhraseIndex::merge).trim();
+        PhraseIndex index = previous.copy();
+        long used = estimatedBytes(previous) + terms.sizeInBytes();
+        if (used > budget) {
+            log.warn("Words alone take about {} bytes, more than budget of {} bytes - only they are indexed", used, budget);
+        }
+        int[] minPrefixLines = {Integer.MAX_VALUE, Integer.MAX_VALUE};
+        boolean fits = used < budget;
+        for (int length = 2; fits; length++) {
+            int maxPrefixLines = maxLines(previous);
+            PhraseIndex level = new PhraseIndex();
+            int threshold = Integer.MAX_VALUE;
+            int maxLines = Integer.MAX_VALUE;
+            int minLines = Math.max(MIN_PREFIX_LINES, maxPrefixLines / BAND_FACTOR);
+            while (maxLines > MIN_PREFIX_LINES && maxPrefixLines >= MIN_PREFIX_LINES) {
+                PhraseIndex band = indexBand(text, terms, previous, length, minLines, maxLines, budget - used);
+                long bandBytes = band == null ? Long.MAX_VALUE : estimatedBytes(band);
+                if (bandBytes > budget - used) {
+                    if (minLines >= maxPrefixLines || (long) minLines * 2 >= maxLines) {
+                        fits = false;
+                        break;
+                    }
+                    minLines *= 2;
+                    continue;
+                }
+                used += bandBytes;
+                band.forEach(level::put);
+                threshold = minLines;
+                maxLines = minLines;
+                minLines = Math.max(MIN_PREFIX_LINES, minLines / BAND_FACTOR);
+            }
+            if (level.size() == 0) {
+                break;
             }
-            log.info("Indexed phrases of length {}. The longest phrase is {}. Max indexed phrase will be {}", phraseLength, longestPhrase, maxPhraseLengthToIndex);
+            level.forEach(index::put);
+            minPrefixLines = Arrays.copyOf(minPrefixLines, length + 1);
+            minPrefixLines[length] = threshold;
+            log.info("Phrases of {} words indexed after prefixes in at least {} lines: {}, index takes about {} of {} bytes",
+                    length, threshold, level.size(), used, budget);
+            previous = level;
         }
+        generation = new Generation(text, terms, index, minPrefixLines.length - 1, minPrefixLines);
+        log.info("Indexed {} phrases of up to {} words within budget", index.size(), minPrefixLines.length - 1);
     }
 
-    private void indexPhrase(String[] normalizedLine, int lineNumber, int phraseLength) {
-        for(int wordIndex = 0; wordIndex < normalizedLine.length - phraseLength + 1; wordIndex++) {
-            String[] phraseTable = new String[phraseLength];
-            System.arraycopy(normalizedLine, wordIndex, phraseTable, 0, phraseLength);
-            String phrase = String.join(" ",phraseTable);
-            if (!index.containsKey(phrase)) {
-                index.put(phrase, Sets.newHashSet());
+    /**
+     * Phrases of {@code length} words whose prefix is in {@code prefixes} with {@code minLines} to {@code maxLines}
+     * (exclusive) lines, or null when they would take more than {@code budget} bytes. The estimate (which counts a
+     * phrase once per shard it occurs in) is updated while building, so an oversized band is given up before it takes
+     * much more than the budget.
+     */
+    private PhraseIndex indexBand(SourceText.Lines text, TermDictionary terms, PhraseIndex prefixes, int length,
+                                  int minLines, int maxLines, long budget) {
+        AtomicLong estimate = new AtomicLong();
+        PhraseIndex band = ParallelIndexer.build("Phrase index, " + length + " words", text.size(), (fromLine, toLine) -> {
+            PhraseIndex shard = new PhraseIndex();
+            Tokenizer words = Tokenizer.get();
+            int[] termIds = new int[16];
+            for (int lineNumber = fromLine; lineNumber < toLine && estimate.get() <= budget; lineNumber++) {
+                termIds = termIds(words.words(text.lowerCase(lineNumber)), terms, termIds);
+                long added = 0;
+                for (int wordIndex = 0; wordIndex < words.count() - length + 1; wordIndex++) {
+                    long prefix = key(termIds, wordIndex, wordIndex + length - 1);
+                    PostingList prefixLines = prefixes.get(prefix);
+                    if (prefixLines == null || prefixLines.size() < minLines || prefixLines.size() >= maxLines) {
+                        continue;
+                    }
+                    int phrasesBefore = shard.size();
+                    shard.lines(PhraseIndex.key(prefix, termIds[wordIndex + length - 1])).add(lineNumber);
+                    added += shard.size() == phrasesBefore ? 1 : ENTRY_OVERHEAD_BYTES + 1;
+                }
+                estimate.addAndGet(added);
             }
-            index.get(phrase).add(lineNumber);
+            return shard;
+        }, PhraseIndex::merge);
+        if (estimate.get() > budget) {
+            return null;
         }
+        return band.trim();
     }
 
-    private String[] normalizeAndSplit(String line) {
-        return line.toLowerCase(LOCALE_PL).strip().split("\\P{L}+", -1);
+    static long estimatedBytes(PhraseIndex index) {
+        long[] bytes = {0};
+        index.forEach((key, lines) -> bytes[0] += ENTRY_OVERHEAD_BYTES + lines.sizeInBytes());
+        return bytes[0];
     }
 
+    private static int maxLines(PhraseIndex index) {
+        int[] max = {0};
+        index.forEach((key, lines) -> max[0] = Math.max(max[0], lines.size()));
+        return max[0];
+    }
+
+    private PhraseIndex indexLines(SourceText.Lines text, TermDictionary terms, int fromLine, int toLine, int maxPhraseLength) {
+        PhraseIndex shard = new PhraseIndex();
+        Tokenizer words = Tokenizer.get();
+        int[] termIds = new int[16];
+        for (int lineNumber = fromLine; lineNumber < toLine; lineNumber++) {
+            termIds = termIds(words.words(text.lowerCase(lineNumber)), terms, termIds);
+            for (int fromWord = 0; fromWord < words.count(); fromWord++) {
+                long key = PhraseIndex.NO_WORDS;
+                for (int word = fromWord; word < words.count() && word - fromWord < maxPhraseLength; word++) {
+                    key = PhraseIndex.key(key, termIds[word]);
+                    shard.lines(key).add(lineNumber);
+                }
+            }
+        }
+        return shard;
+    }
+
+    /**
+     * Ids of all words of the tokenizer, in {@code reused} if it is long enough. All words have to be in the dictionary.
+     */
+    private static int[] termIds(Tokenizer words, TermDictionary terms, int[] reused) {
+        int[] termIds = reused.length >= words.count() ? reused : new int[words.count() * 2];
+        for (int word = 0; word < words.count(); word++) {
+            termIds[word] = words.termId(terms, word);
+        }
+        return termIds;
+    }
+
+    private static long key(int[] termIds, int fromWord, int toWord) {
+        long key = PhraseIndex.NO_WORDS;
+        for (int word = fromWord; word < toWord; word++) {
+            key = PhraseIndex.key(key, termIds[word]);
+        }
+        return key;
+    }
+
+    private static final class Generation {
+        private final SourceText.Lines text;
+        private final TermDictionary terms;
+        private final PhraseIndex index;
+        private final PhraseFilter filter;
+        private final int maxPhraseLength;
+        private final int[] minPrefixLines;
+
+        private Generation(SourceText.Lines text, TermDictionary terms, PhraseIndex index, int maxPhraseLength,
+                           int[] minPrefixLines) {
+            this(text, terms, index, PhraseFilter.of(index), maxPhraseLength, minPrefixLines);
+        }
+
+        private Generation(SourceText.Lines text, TermDictionary terms, PhraseIndex index, PhraseFilter filter,
+                           int maxPhraseLength, int[] minPrefixLines) {
+            this.text = text;
+            this.terms = terms;
+            this.index = index;
+            this.filter = filter;
+            this.maxPhraseLength = maxPhraseLength;
+            this.minPrefixLines = minPrefixLines;
+        }
+
+        private PostingList lines(long key) {
+            return filter.mightContain(key) ? index.get(key) : null;
+        }
+    }
 }
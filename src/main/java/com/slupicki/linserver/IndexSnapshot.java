@@ -0,0 +1,86 @@
+package com.slupicki.linserver;
+
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * Binary snapshot of {@link IndexSearchServiceImpl} index. The header holds a key built from the hash of the indexed
+ * lines and the phrase length limit, so a snapshot is only used for the exact input it was built from - hashing the
+ * lines already read, not the file, a change of the file while it is loaded can't give old lines a new key. Words are written in
+ * the order of their ids, so phrase keys stay valid when they are read back.
+ */
+public final class IndexSnapshot {
+
+    private static final Logger log = LoggerFactory.getLogger(IndexSnapshot.class);
+
+    static final int MAGIC = 0x4C4E5358;
+    static final int VERSION = 2;
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private IndexSnapshot() {}
+
+    public static String key(SourceText.Lines text, int maxPhraseLengthToIndex) {
+        Hasher hasher = Hashing.sha256().newHasher();
+        for (int lineNumber = 0; lineNumber < text.size(); lineNumber++) {
+            hasher.putBytes(text.bytes(lineNumber)).putByte((byte) '\n');
+        }
+        return hasher.hash() + ":" + maxPhraseLengthToIndex;
+    }
+
+    public static boolean load(Path snapshotFile, String key, SourceText.Lines text, IndexSearchServiceImpl searchService) throws IOException {
+        if (!Files.isRegularFile(snapshotFile)) {
+            log.info("Index snapshot '{}' doesn't exist", snapshotFile);
+            return false;
+        }
+        long start = System.nanoTime();
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(snapshotFile), BUFFER_SIZE))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                log.info("Index snapshot '{}' has unknown format - ignoring it", snapshotFile);
+                return false;
+            }
+            String snapshotKey = in.readUTF();
+            if (!snapshotKey.equals(key)) {
+                log.info("Index snapshot '{}' was built for different input ({}) - ignoring it", snapshotFile, snapshotKey);
+                return false;
+            }
+            int indexedPhraseLength = in.readInt();
+            TermDictionary terms = TermDictionary.read(in);
+            PhraseIndex index = PhraseIndex.read(in);
+            searchService.setIndex(text, terms, index, indexedPhraseLength);
+            log.info("Loaded {} phrases from index snapshot '{}' in {}ms", index.size(), snapshotFile, (System.nanoTime() - start) / 1_000_000);
+            return true;
+        }
+    }
+
+    public static void save(Path snapshotFile, String key, IndexSearchServiceImpl searchService) throws IOException {
+        long start = System.nanoTime();
+        Path absoluteFile = snapshotFile.toAbsolutePath();
+        Path tempFile = Files.createTempFile(absoluteFile.getParent(), absoluteFile.getFileName().toString(), ".tmp");
+        TermDictionary terms = searchService.getTerms();
+        PhraseIndex index = searchService.getIndex();
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tempFile), BUFFER_SIZE))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeUTF(key);
+            out.writeInt(searchService.getIndexedPhraseLength());
+            terms.write(out);
+            index.write(out);
+        } catch (IOException e) {
+            Files.deleteIfExists(tempFile);
+            throw e;
+        }
+        Files.move(tempFile, absoluteFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        log.info("Saved {} phrases to index snapshot '{}' in {}ms", index.size(), snapshotFile, (System.nanoTime() - start) / 1_000_000);
+    }
+}
@@ -0,0 +1,223 @@
+package com.slupicki.linserver;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Lines of a memory mapped UTF-8 file. Only line start offsets are kept on heap (4 bytes per line plus a long
+ * per {@link #BLOCK_SIZE} lines), text is decoded on access. Splitting follows {@link java.nio.file.Files#lines}:
+ * '\n', '\r' and "\r\n" end a line.
+ * <p>
+ * Instances are immutable views. {@link #append()} scans only bytes added to the file since and returns a new view
+ * sharing the offsets table with this one.
+ */
+public final class MappedLines implements SourceText.Lines {
+
+    static final int MAX_CHUNK_SIZE = 1 << 30;
+    private static final int BLOCK_SHIFT = 6;
+    private static final int BLOCK_SIZE = 1 << BLOCK_SHIFT;
+
+    private final Path path;
+    private final int maxChunkSize;
+    private final MappedByteBuffer[] chunks;
+    private final long[] chunkStarts;
+    private final int[] chunkFirstLines;
+    private final LineStarts lineStarts;
+    private final long[] blockStarts;
+    private final int[] lineOffsets;
+    private final int size;
+    private final long end;
+    private final boolean previousWasCarriageReturn;
+    private final boolean withUnterminatedLine;
+
+    private MappedLines(Path path, int maxChunkSize, MappedByteBuffer[] chunks, long[] chunkStarts, int[] chunkFirstLines,
+                        LineStarts lineStarts, long end, boolean previousWasCarriageReturn, boolean withUnterminatedLine) {
+        this.path = path;
+        this.maxChunkSize = maxChunkSize;
+        this.chunks = chunks;
+        this.chunkStarts = chunkStarts;
+        this.chunkFirstLines = chunkFirstLines;
+        this.lineStarts = lineStarts;
+        this.blockStarts = lineStarts.blockStarts;
+        this.lineOffsets = lineStarts.offsets;
+        this.size = lineStarts.size;
+        this.end = end;
+        this.previousWasCarriageReturn = previousWasCarriageReturn;
+        this.withUnterminatedLine = withUnterminatedLine;
+    }
+
+    public static MappedLines map(Path path) throws IOException {
+        return map(path, MAX_CHUNK_SIZE);
+    }
+
+    static MappedLines map(Path path, int maxChunkSize) throws IOException {
+        return empty(path, maxChunkSize).scan(true);
+    }
+
+    /**
+     * Maps only lines already terminated by a line separator, so the result can be {@link #append() appended} to
+     * when the file grows.
+     */
+    public static MappedLines mapCompleteLines(Path path) throws IOException {
+        return mapCompleteLines(path, MAX_CHUNK_SIZE);
+    }
+
+    static MappedLines mapCompleteLines(Path path, int maxChunkSize) throws IOException {
+        return empty(path, maxChunkSize).scan(false);
+    }
+
+    private static MappedLines empty(Path path, int maxChunkSize) {
+        return new MappedLines(path, maxChunkSize, new MappedByteBuffer[0], new long[0], new int[0], new LineStarts(),
+                0, false, false);
+    }
+
+    public MappedLines append() throws IOException {
+        if (withUnterminatedLine) {
+            throw new IllegalStateException("Lines mapped with last unterminated line can't be appended");
+        }
+        if (lineStarts.size != size) {
+            throw new IllegalStateException("Only the latest version of lines can be appended");
+        }
+        return scan(false);
+    }
+
+    private MappedLines scan(boolean includeUnterminatedLine) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long length = channel.size();
+            if (length < end) {
+                throw new IOException("File '" + path + "' was truncated from " + end + " to " + length + " bytes");
+            }
+            if (length == end && !includeUnterminatedLine && chunks.length > 0) {
+                return this;
+            }
+            int chunkCount = chunks.length;
+            long chunkStart = end;
+            if (chunkCount > 0 && length - chunkStarts[chunkCount - 1] <= maxChunkSize) {
+                chunkCount--;
+                chunkStart = chunkStarts[chunkCount];
+            }
+            MappedByteBuffer[] newChunks = Arrays.copyOf(chunks, chunkCount);
+            long[] newChunkStarts = Arrays.copyOf(chunkStarts, chunkCount);
+            int[] newChunkFirstLines = Arrays.copyOf(chunkFirstLines, chunkCount);
+            long lineStart = end;
+            long position = end;
+            boolean carriageReturn = previousWasCarriageReturn;
+            while (position < length || newChunks.length == 0) {
+                int chunkSize = (int) Math.min(maxChunkSize, length - chunkStart);
+                MappedByteBuffer chunk = channel.map(FileChannel.MapMode.READ_ONLY, chunkStart, chunkSize);
+                newChunks = Arrays.copyOf(newChunks, newChunks.length + 1);
+                newChunkStarts = Arrays.copyOf(newChunkStarts, newChunks.length);
+                newChunkFirstLines = Arrays.copyOf(newChunkFirstLines, newChunks.length);
+                newChunks[newChunks.length - 1] = chunk;
+                newChunkStarts[newChunks.length - 1] = chunkStart;
+                newChunkFirstLines[newChunks.length - 1] = chunkStart < end ? chunkFirstLines[chunkCount] : lineStarts.size;
+                long chunkEnd = chunkStart + chunkSize;
+                for (; position < chunkEnd; position++) {
+                    byte b = chunk.get((int) (position - chunkStart));
+                    if (b == '\n' && carriageReturn) {
+                        lineStart = position + 1;
+                    } else if (b == '\n' || b == '\r') {
+                        lineStarts.add(lineStart);
+                        lineStart = position + 1;
+                    }
+                    carriageReturn = b == '\r';
+                }
+                if (chunkEnd < length && lineStart == chunkStart) {
+                    throw new IOException("Line starting at byte " + lineStart + " of '" + path + "' is longer than " + maxChunkSize + " bytes");
+                }
+                chunkStart = lineStart;
+            }
+            long newEnd = lineStart;
+            if (includeUnterminatedLine) {
+                if (lineStart < length) {
+                    lineStarts.add(lineStart);
+                }
+                newEnd = length;
+                lineStarts.trim();
+            }
+            return new MappedLines(path, maxChunkSize, newChunks, newChunkStarts, newChunkFirstLines, lineStarts,
+                    newEnd, carriageReturn, includeUnterminatedLine);
+        }
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public String get(int n) {
+        ByteBuffer bytes = bytes(n);
+        byte[] array = new byte[bytes.remaining()];
+        bytes.get(array);
+        return new String(array, StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public ByteBuffer bytes(int n) {
+        int chunkIdx = chunkOf(n);
+        ByteBuffer chunk = chunks[chunkIdx];
+        long next = n + 1 < size ? lineStart(n + 1) : end;
+        int start = (int) (lineStart(n) - chunkStarts[chunkIdx]);
+        int lineEnd = (int) Math.min(next - chunkStarts[chunkIdx], chunk.limit());
+        if (lineEnd > start && chunk.get(lineEnd - 1) == '\n') {
+            lineEnd--;
+        }
+        if (lineEnd > start && chunk.get(lineEnd - 1) == '\r') {
+            lineEnd--;
+        }
+        return chunk.slice(start, lineEnd - start);
+    }
+
+    public long sizeInBytes() {
+        return end;
+    }
+
+    public Path path() {
+        return path;
+    }
+
+    private long lineStart(int n) {
+        return blockStarts[n >> BLOCK_SHIFT] + lineOffsets[n];
+    }
+
+    private int chunkOf(int n) {
+        int idx = Arrays.binarySearch(chunkFirstLines, n);
+        if (idx < 0) {
+            return -idx - 2;
+        }
+        while (idx + 1 < chunkFirstLines.length && chunkFirstLines[idx + 1] == n) {
+            idx++;
+        }
+        return idx;
+    }
+
+    private static final class LineStarts {
+        private long[] blockStarts = new long[16];
+        private int[] offsets = new int[BLOCK_SIZE * 16];
+        private int size;
+
+        private void add(long start) {
+            int block = size >> BLOCK_SHIFT;
+            if (size == offsets.length) {
+                offsets = Arrays.copyOf(offsets, size * 2);
+                blockStarts = Arrays.copyOf(blockStarts, blockStarts.length * 2);
+            }
+            if ((size & (BLOCK_SIZE - 1)) == 0) {
+                blockStarts[block] = start;
+            }
+            offsets[size++] = (int) (start - blockStarts[block]);
+        }
+
+        private void trim() {
+            offsets = Arrays.copyOf(offsets, size);
+            blockStarts = Arrays.copyOf(blockStarts, (size >> BLOCK_SHIFT) + 1);
+        }
+    }
+}
@@ -0,0 +1,123 @@
+package com.slupicki.linserver;
+
+import java.util.Arrays;
+
+/**
+ * Lines matching a search, produced on demand in ascending order, so callers can stream them or stop after the ones
+ * they need. Line numbers count from 0 and refer to {@link #text()}, the text the searched index was built from.
+ * Not thread safe.
+ */
+public interface Matches {
+
+    int NO_MORE = PostingList.NO_MORE;
+
+    SourceText.Lines text();
+
+    /**
+     * The next matching line or {@link #NO_MORE} when there are no more.
+     */
+    int next();
+
+    /**
+     * The next match not less than {@code target} or {@link #NO_MORE}; matches before it are skipped.
+     */
+    default int advance(int target) {
+        int line = next();
+        while (line < target) {
+            line = next();
+        }
+        return line;
+    }
+
+    /**
+     * Candidate lines found so far by the index that had to be checked against the text of the phrase, matching or
+     * not. Engines whose index gives exact matches check none.
+     */
+    default int verified() {
+        return 0;
+    }
+
+    static Matches none(SourceText.Lines text) {
+        return of(text, new int[0]);
+    }
+
+    static Matches of(SourceText.Lines text, PostingList.Cursor lines) {
+        return new Matches() {
+            @Override
+            public SourceText.Lines text() {
+                return text;
+            }
+
+            @Override
+            public int next() {
+                return lines.next();
+            }
+
+            @Override
+            public int advance(int target) {
+                if (lines.index() >= 0 && lines.value() >= target) {
+                    return lines.value() == NO_MORE ? NO_MORE : lines.advance(lines.value() + 1);
+                }
+                return lines.advance(target);
+            }
+        };
+    }
+
+    /**
+     * Matches listed in {@code lines}, which have to be sorted and distinct.
+     */
+    static Matches of(SourceText.Lines text, int[] lines) {
+        return new Matches() {
+            private int next;
+
+            @Override
+            public SourceText.Lines text() {
+                return text;
+            }
+
+            @Override
+            public int next() {
+                return next < lines.length ? lines[next++] : NO_MORE;
+            }
+
+            @Override
+            public int advance(int target) {
+                int found = Arrays.binarySearch(lines, next, lines.length, target);
+                next = found >= 0 ? found : -found - 1;
+                return next();
+            }
+        };
+    }
+
+    /**
+     * Matches from {@code fromLine} (inclusive) to {@code toLine} (exclusive), earlier ones are skipped without
+     * reading them where the engine allows.
+     */
+    static Matches within(Matches matches, int fromLine, int toLine) {
+        return new Matches() {
+            private boolean started;
+
+            @Override
+            public SourceText.Lines text() {
+                return matches.text();
+            }
+
+            @Override
+            public int next() {
+                return advance(fromLine);
+            }
+
+            @Override
+            public int advance(int target) {
+                int line = started ? matches.advance(target) : matches.advance(Math.max(target, fromLine));
+                started = true;
+                return line < toLine ? line : NO_MORE;
+            }
+
+            @Override
+            public int verified() {
+                return matches.verified();
+            }
+        };
+    }
+}
@@ -3,6 +3,13 @@ package com.slupicki.linserver;
 import org.springframework.http.HttpStatus;
 import org.springframework.web.bind.annotation.ResponseStatus;
 
+/**
+ * Missing line, document or phrase. It is expected rather than exceptional, so it has no stack trace to fill.
+ */
 @ResponseStatus(HttpStatus.NOT_FOUND)
 public class NotFoundException extends RuntimeException {
+
+    public NotFoundException() {
+        super(null, null, false, false);
+    }
 }
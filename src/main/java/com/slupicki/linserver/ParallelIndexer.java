@@ -0,0 +1,107 @@
+package com.slupicki.linserver;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BinaryOperator;
+
+/**
+ * Builds an index with fork/join over line ranges. Ranges are halved until they fit in one shard, every shard gets its
+ * own partial index and neighbouring partial indexes are merged back. The left side of a merge always holds lower line
+ * numbers, so posting lists can simply be appended. Builds of a single shard, like lines appended in tail mode, are
+ * logged only at debug level.
+ */
+final class ParallelIndexer {
+
+    private static final Logger log = LoggerFactory.getLogger(ParallelIndexer.class);
+
+    static final int MIN_LINES_PER_SHARD = 256;
+    private static final int PROGRESS_STEPS = 10;
+
+    private ParallelIndexer() {}
+
+    @FunctionalInterface
+    interface ShardBuilder<T> {
+        T build(int fromLine, int toLine);
+    }
+
+    static <T> T build(String name, int lines, ShardBuilder<T> shardBuilder, BinaryOperator<T> merger) {
+        return build(name, 0, lines, shardBuilder, merger);
+    }
+
+    static <T> T build(String name, int fromLine, int toLine, ShardBuilder<T> shardBuilder, BinaryOperator<T> merger) {
+        int lines = toLine - fromLine;
+        int shardSize = Math.max(MIN_LINES_PER_SHARD, lines / (ForkJoinPool.getCommonPoolParallelism() * 4) + 1);
+        boolean oneShard = lines <= shardSize;
+        Progress progress = new Progress(name, oneShard ? 0 : lines);
+        long start = System.nanoTime();
+        T result = ForkJoinPool.commonPool().invoke(new ShardTask<>(fromLine, toLine, shardSize, shardBuilder, merger, progress));
+        if (oneShard) {
+            log.debug("{}: indexed {} lines in {}ms", name, lines, (System.nanoTime() - start) / 1_000_000);
+        } else {
+            log.info("{}: indexed {} lines in {}ms in {} shards", name, lines, (System.nanoTime() - start) / 1_000_000,
+                    progress.shards.get());
+        }
+        return result;
+    }
+
+    private static final class ShardTask<T> extends RecursiveTask<T> {
+        private final int fromLine;
+        private final int toLine;
+        private final int shardSize;
+        private final ShardBuilder<T> shardBuilder;
+        private final BinaryOperator<T> merger;
+        private final Progress progress;
+
+        private ShardTask(int fromLine, int toLine, int shardSize, ShardBuilder<T> shardBuilder, BinaryOperator<T> merger, Progress progress) {
+            this.fromLine = fromLine;
+            this.toLine = toLine;
+            this.shardSize = shardSize;
+            this.shardBuilder = shardBuilder;
+            this.merger = merger;
+            this.progress = progress;
+        }
+
+        @Override
+        protected T compute() {
+            if (toLine - fromLine <= shardSize) {
+                T shard = shardBuilder.build(fromLine, toLine);
+                progress.done(toLine - fromLine);
+                return shard;
+            }
+            int middle = (fromLine + toLine) >>> 1;
+            ShardTask<T> left = new ShardTask<>(fromLine, middle, shardSize, shardBuilder, merger, progress);
+            ShardTask<T> right = new ShardTask<>(middle, toLine, shardSize, shardBuilder, merger, progress);
+            right.fork();
+            T leftResult = left.compute();
+            return merger.apply(leftResult, right.join());
+        }
+    }
+
+    private static final class Progress {
+        private final String name;
+        private final int lines;
+        private final AtomicInteger indexedLines = new AtomicInteger();
+        private final AtomicInteger shards = new AtomicInteger();
+
+        private Progress(String name, int lines) {
+            this.name = name;
+            this.lines = lines;
+        }
+
+        private void done(int shardLines) {
+            shards.incrementAndGet();
+            if (lines == 0) {
+                return;
+            }
+            int before = indexedLines.getAndAdd(shardLines);
+            int after = before + shardLines;
+            if ((long) before * PROGRESS_STEPS / lines != (long) after * PROGRESS_STEPS / lines) {
+                log.info("{}: indexed {} lines from {}", name, after, lines);
+            }
+        }
+    }
+}
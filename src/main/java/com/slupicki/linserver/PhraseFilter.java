@@ -0,0 +1,77 @@
+package com.slupicki.linserver;
+
+/**
+ * Bloom filter of phrase keys of a {@link PhraseIndex}, about {@link #BITS_PER_KEY} bits per phrase. All bits of a
+ * key are in one 64-bit word, so a check reads one word of an array much smaller than the index; a phrase it rejects
+ * is certainly not indexed, one it accepts is indexed except for a fraction of a percent of false positives.
+ * <p>
+ * It is sized for a number of keys, so keys of appended lines can be added to it until there are more of them. One
+ * thread may add keys while others check: bits are only ever set, so no key added before stops being accepted.
+ */
+final class PhraseFilter {
+
+    static final int BITS_PER_KEY = 16;
+    private static final int BITS_SET_PER_KEY = 6;
+
+    private final long[] words;
+    private final int capacity;
+
+    private PhraseFilter(int keys) {
+        words = new long[Math.max(1, (int) Math.min(Integer.MAX_VALUE - 8, (long) keys * BITS_PER_KEY / Long.SIZE))];
+        capacity = keys;
+    }
+
+    static PhraseFilter of(PhraseIndex index) {
+        return of(index, index.size());
+    }
+
+    /**
+     * Filter of keys of the index sized for {@code capacity} keys, at least as many as the index has.
+     */
+    static PhraseFilter of(PhraseIndex index, int capacity) {
+        PhraseFilter filter = new PhraseFilter(capacity);
+        index.forEach((key, lines) -> filter.add(key));
+        return filter;
+    }
+
+    int capacity() {
+        return capacity;
+    }
+
+    void add(long key) {
+        long hash = mix(key);
+        words[word(hash)] |= mask(hash);
+    }
+
+    boolean mightContain(long key) {
+        long hash = mix(key);
+        long mask = mask(hash);
+        return (words[word(hash)] & mask) == mask;
+    }
+
+    long sizeInBytes() {
+        return 8L * words.length;
+    }
+
+    private int word(long hash) {
+        return (int) (((hash >>> 36) * words.length) >>> 28);
+    }
+
+    /**
+     * Bits picked by six 6-bit fields of the low 36 bits of the hash, the remaining 28 bits pick the word.
+     */
+    private static long mask(long hash) {
+        long mask = 0;
+        for (int bit = 0; bit < BITS_SET_PER_KEY; bit++) {
+            mask |= 1L << (hash >>> (bit * 6));
+        }
+        return mask;
+    }
+
+    private static long mix(long key) {
+        key ^= key >>> 33;
+        key *= 0xFF51AFD7ED558CCDL;
+        key ^= key >>> 33;
+        return key;
+    }
+}
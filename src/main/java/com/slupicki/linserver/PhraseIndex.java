@@ -0,0 +1,229 @@
+package com.slupicki.linserver;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.function.BinaryOperator;
+
+/**
+ * Open addressing map from phrase keys to lines containing the phrase. A key is a 64-bit hash of term ids of the
+ * phrase words, extended word by word with {@link #key(long, int)} starting from {@link #NO_WORDS}, so it takes no
+ * memory for characters and is built without strings. Phrases with the same key would share their lines - candidates
+ * are verified against the text anyway, so that could only cost time.
+ * <p>
+ * One thread may add phrases while others search: a new entry is published with release semantics after its key, and
+ * so is the size. Slots are copied only when the table grows, into a new table published as a whole, so a search
+ * reads either the old or the new one. Searches of an index generation built before lines were appended see their
+ * keys too, and lines of posting lists grown since (published safely by {@link PostingList}); they have to ignore
+ * lines beyond their own text.
+ */
+final class PhraseIndex {
+
+    static final long NO_WORDS = 0;
+
+    private static final VarHandle VALUES = MethodHandles.arrayElementVarHandle(PostingList[].class);
+    private static final VarHandle SIZE;
+
+    static {
+        try {
+            SIZE = MethodHandles.lookup().findVarHandle(PhraseIndex.class, "size", int.class);
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    private volatile Table table;
+    private int size;
+
+    PhraseIndex() {
+        this(16);
+    }
+
+    private PhraseIndex(int capacity) {
+        table = new Table(capacity);
+    }
+
+    /**
+     * Key of the phrase {@code prefix} (key of its words but the last one) followed by the word {@code termId}.
+     */
+    static long key(long prefix, int termId) {
+        long key = (prefix + termId + 1) * 0x9E3779B97F4A7C15L;
+        return key ^ (key >>> 32);
+    }
+
+    int size() {
+        return (int) SIZE.getAcquire(this);
+    }
+
+    PostingList get(long key) {
+        Table current = table;
+        return current.value(current.slot(key));
+    }
+
+    /**
+     * Lines of the phrase, added empty if it is new.
+     */
+    PostingList lines(long key) {
+        Table current = table;
+        int slot = current.slot(key);
+        PostingList lines = current.value(slot);
+        if (lines == null) {
+            lines = new PostingList();
+            insert(current, slot, key, lines);
+        }
+        return lines;
+    }
+
+    void put(long key, PostingList lines) {
+        Table current = table;
+        int slot = current.slot(key);
+        if (current.value(slot) == null) {
+            insert(current, slot, key, lines);
+        } else {
+            VALUES.setRelease(current.values, slot, lines);
+        }
+    }
+
+    void merge(long key, PostingList lines, BinaryOperator<PostingList> remapping) {
+        Table current = table;
+        int slot = current.slot(key);
+        PostingList existing = current.value(slot);
+        if (existing == null) {
+            insert(current, slot, key, lines);
+        } else {
+            VALUES.setRelease(current.values, slot, remapping.apply(existing, lines));
+        }
+    }
+
+    /**
+     * Merges indexes of neighbouring line ranges, {@code left} of lower line numbers, into the bigger of them.
+     */
+    static PhraseIndex merge(PhraseIndex left, PhraseIndex right) {
+        boolean leftIsSmaller = left.size < right.size;
+        PhraseIndex smaller = leftIsSmaller ? left : right;
+        PhraseIndex bigger = leftIsSmaller ? right : left;
+        smaller.forEach((key, lines) -> bigger.merge(key, lines, (biggerLines, smallerLines) ->
+                leftIsSmaller ? smallerLines.addAll(biggerLines) : biggerLines.addAll(smallerLines)));
+        return bigger;
+    }
+
+    void forEach(EntryConsumer consumer) {
+        Table current = table;
+        for (int slot = 0; slot < current.values.length; slot++) {
+            PostingList lines = current.value(slot);
+            if (lines != null) {
+                consumer.accept(current.keys[slot], lines);
+            }
+        }
+    }
+
+    PhraseIndex trim() {
+        forEach((key, lines) -> lines.trim());
+        return this;
+    }
+
+    /**
+     * Copy sharing posting lists, so phrases can be added to it while this one is being searched.
+     */
+    PhraseIndex copy() {
+        PhraseIndex copy = new PhraseIndex(0);
+        copy.table = new Table(table.keys.clone(), table.values.clone());
+        copy.size = size;
+        return copy;
+    }
+
+    void write(DataOutput out) throws IOException {
+        Table current = table;
+        out.writeInt(size());
+        for (int slot = 0; slot < current.values.length; slot++) {
+            PostingList lines = current.value(slot);
+            if (lines != null) {
+                out.writeLong(current.keys[slot]);
+                lines.write(out);
+            }
+        }
+    }
+
+    static PhraseIndex read(DataInput in) throws IOException {
+        PhraseIndex index = new PhraseIndex();
+        for (int entries = in.readInt(); entries > 0; entries--) {
+            index.put(in.readLong(), PostingList.read(in));
+        }
+        return index;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof PhraseIndex)) {
+            return false;
+        }
+        PhraseIndex that = (PhraseIndex) o;
+        if (size() != that.size()) {
+            return false;
+        }
+        boolean[] equal = {true};
+        forEach((key, lines) -> equal[0] &= lines.equals(that.get(key)));
+        return equal[0];
+    }
+
+    @Override
+    public int hashCode() {
+        int[] hash = {size()};
+        forEach((key, lines) -> hash[0] += Long.hashCode(key) ^ lines.size());
+        return hash[0];
+    }
+
+    private void insert(Table current, int slot, long key, PostingList lines) {
+        current.keys[slot] = key;
+        VALUES.setRelease(current.values, slot, lines);
+        SIZE.setRelease(this, size + 1);
+        if (size * 3 > current.keys.length * 2) {
+            Table grown = new Table(current.keys.length * 2);
+            for (int oldSlot = 0; oldSlot < current.keys.length; oldSlot++) {
+                if (current.values[oldSlot] != null) {
+                    int newSlot = grown.slot(current.keys[oldSlot]);
+                    grown.keys[newSlot] = current.keys[oldSlot];
+                    grown.values[newSlot] = current.values[oldSlot];
+                }
+            }
+            table = grown;
+        }
+    }
+
+    private static final class Table {
+        private final long[] keys;
+        private final PostingList[] values;
+
+        private Table(int capacity) {
+            this(new long[capacity], new PostingList[capacity]);
+        }
+
+        private Table(long[] keys, PostingList[] values) {
+            this.keys = keys;
+            this.values = values;
+        }
+
+        private PostingList value(int slot) {
+            return (PostingList) VALUES.getAcquire(values, slot);
+        }
+
+        private int slot(long key) {
+            int mask = keys.length - 1;
+            int slot = (int) key & mask;
+            while (value(slot) != null && keys[slot] != key) {
+                slot = (slot + 1) & mask;
+            }
+            return slot;
+        }
+    }
+
+    @FunctionalInterface
+    interface EntryConsumer {
+        void accept(long key, PostingList lines);
+    }
+}
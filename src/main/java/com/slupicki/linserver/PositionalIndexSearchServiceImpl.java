@@ -0,0 +1,218 @@
+package com.slupicki.linserver;
+
+import com.google.common.collect.Lists;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Service;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Inverted index of words with positions of each word in every line, kept in an array by word id from a
+ * {@link TermDictionary}.
+ */
+@Service
+public class PositionalIndexSearchServiceImpl implements SearchService {
+
+    private static final Logger log = LoggerFactory.getLogger(PositionalIndexSearchServiceImpl.class);
+
+    private volatile Generation generation = new Generation(SourceText.current(), new TermDictionary(), new TermPostings[0]);
+
+    @Override
+    public Matches find(String phrase) {
+        Generation current = generation;
+        String lowerCasePhrase = phrase.toLowerCase(LOCALE_PL);
+        List<TermPostings> terms = Lists.newArrayList();
+        Tokenizer words = Tokenizer.get().words(lowerCasePhrase);
+        for (int word = 0; word < words.count(); word++) {
+            if (words.isEmpty(word)) {
+                continue;
+            }
+            int termId = words.termId(current.terms, word);
+            TermPostings postings = termId == TermDictionary.NONE ? null : current.index[termId];
+            if (postings == null) {
+                return Matches.none(current.text);
+            }
+            terms.add(postings);
+        }
+        if (terms.isEmpty()) {
+            return Matches.none(current.text);
+        }
+        PostingList.Cursor[] cursors = new PostingList.Cursor[terms.size()];
+        for (int termIdx = 0; termIdx < terms.size(); termIdx++) {
+            cursors[termIdx] = terms.get(termIdx).lines().cursor();
+        }
+        return new Matches() {
+            private int target = 0;
+            private int verified = 0;
+
+            @Override
+            public SourceText.Lines text() {
+                return current.text;
+            }
+
+            @Override
+            public int next() {
+                for (int candidate = PostingList.advanceAll(cursors, target); candidate != PostingList.NO_MORE;
+                     candidate = PostingList.advanceAll(cursors, target)) {
+                    target = candidate + 1;
+                    verified++;
+                    if (containsConsecutively(terms, cursors) && current.text.lowerCase(candidate).contains(lowerCasePhrase)) {
+                        return candidate;
+                    }
+                }
+                return NO_MORE;
+            }
+
+            @Override
+            public int advance(int line) {
+                target = Math.max(target, line);
+                return next();
+            }
+
+            @Override
+            public int verified() {
+                return verified;
+            }
+        };
+    }
+
+    private boolean containsConsecutively(List<TermPostings> terms, PostingList.Cursor[] cursors) {
+        TermPostings first = terms.get(0);
+        int from = first.positionsFrom(cursors[0].index());
+        int to = first.positionsTo(cursors[0].index());
+        for (int i = from; i < to; i++) {
+            int start = first.positionAt(i);
+            boolean matched = true;
+            for (int termIdx = 1; termIdx < terms.size() && matched; termIdx++) {
+                matched = terms.get(termIdx).hasPosition(cursors[termIdx].index(), start + termIdx);
+            }
+            if (matched) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public void index(SourceText.Lines text) {
+        TermDictionary terms = TermDictionary.build("Positional index words", text, 0, text.size(), Tokenizer::words);
+        TermPostings[] newIndex = ParallelIndexer.build("Positional index", text.size(),
+                (fromLine, toLine) -> indexLines(text, terms, fromLine, toLine), PositionalIndexSearchServiceImpl::mergeShards);
+        long positions = 0;
+        int indexedTerms = 0;
+        for (TermPostings postings : newIndex) {
+            if (postings != null) {
+                postings.trim();
+                positions += postings.positionsSize;
+                indexedTerms++;
+            }
+        }
+        generation = new Generation(text, terms, newIndex);
+        log.info("Indexed {} distinct terms, {} positions", indexedTerms, positions);
+    }
+
+    @Override
+    public long indexEntries() {
+        return generation.terms.size();
+    }
+
+    private TermPostings[] indexLines(SourceText.Lines text, TermDictionary terms, int fromLine, int toLine) {
+        TermPostings[] shard = new TermPostings[terms.size()];
+        Tokenizer words = Tokenizer.get();
+        for (int lineNumber = fromLine; lineNumber < toLine; lineNumber++) {
+            words.words(text.lowerCase(lineNumber));
+            int position = 0;
+            for (int word = 0; word < words.count(); word++) {
+                if (!words.isEmpty(word)) {
+                    int termId = words.termId(terms, word);
+                    if (shard[termId] == null) {
+                        shard[termId] = new TermPostings();
+                    }
+                    shard[termId].add(lineNumber, position++);
+                }
+            }
+        }
+        return shard;
+    }
+
+    private static TermPostings[] mergeShards(TermPostings[] left, TermPostings[] right) {
+        for (int termId = 0; termId < left.length; termId++) {
+            if (left[termId] == null) {
+                left[termId] = right[termId];
+            } else if (right[termId] != null) {
+                left[termId].addAll(right[termId]);
+            }
+        }
+        return left;
+    }
+
+    private static final class Generation {
+        private final SourceText.Lines text;
+        private final TermDictionary terms;
+        private final TermPostings[] index;
+
+        private Generation(SourceText.Lines text, TermDictionary terms, TermPostings[] index) {
+            this.text = text;
+            this.terms = terms;
+            this.index = index;
+        }
+    }
+
+    static final class TermPostings {
+        private final PostingList lines = new PostingList();
+        private int[] positionStarts = new int[2];
+        private int positionsSize;
+        private int[] positions = new int[1];
+
+        private void add(int lineNumber, int position) {
+            int before = lines.size();
+            lines.add(lineNumber);
+            if (lines.size() != before && lines.size() == positionStarts.length) {
+                positionStarts = Arrays.copyOf(positionStarts, lines.size() * 2);
+            }
+            if (positionsSize == positions.length) {
+                positions = Arrays.copyOf(positions, positionsSize * 2);
+            }
+            positions[positionsSize++] = position;
+            positionStarts[lines.size()] = positionsSize;
+        }
+
+        private TermPostings addAll(TermPostings other) {
+            PostingList.Cursor cursor = other.lines.cursor();
+            for (int lineNumber = cursor.next(); lineNumber != PostingList.NO_MORE; lineNumber = cursor.next()) {
+                for (int idx = other.positionsFrom(cursor.index()); idx < other.positionsTo(cursor.index()); idx++) {
+                    add(lineNumber, other.positions[idx]);
+                }
+            }
+            return this;
+        }
+
+        private void trim() {
+            lines.trim();
+            positionStarts = Arrays.copyOf(positionStarts, lines.size() + 1);
+            positions = Arrays.copyOf(positions, positionsSize);
+        }
+
+        PostingList lines() {
+            return lines;
+        }
+
+        int positionsFrom(int idx) {
+            return positionStarts[idx];
+        }
+
+        int positionsTo(int idx) {
+            return positionStarts[idx + 1];
+        }
+
+        int positionAt(int idx) {
+            return positions[idx];
+        }
+
+        boolean hasPosition(int idx, int position) {
+            return Arrays.binarySearch(positions, positionStarts[idx], positionStarts[idx + 1], position) >= 0;
+        }
+    }
+}
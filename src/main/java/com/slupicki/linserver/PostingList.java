@@ -0,0 +1,346 @@
+package com.slupicki.linserver;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+import java.util.PrimitiveIterator;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.IntStream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Append-only sorted set of non-negative ints (line numbers) stored as varint encoded deltas.
+ * Every {@link #SKIP_INTERVAL}-th value is also kept in a skip table so {@link Cursor#advance(int)}
+ * can gallop over whole blocks instead of decoding them.
+ * <p>
+ * One thread may append while others read: size is published with release semantics after the bytes are written,
+ * arrays replaced when they grow are published with their contents, and a {@link Cursor} sees the values added before
+ * it was created.
+ */
+public final class PostingList {
+
+    public static final int NO_MORE = Integer.MAX_VALUE;
+    static final int SKIP_INTERVAL = 64;
+
+    private static final byte[] EMPTY_DATA = new byte[0];
+    private static final int[] EMPTY_SKIPS = new int[0];
+    private static final VarHandle SIZE;
+
+    static {
+        try {
+            SIZE = MethodHandles.lookup().findVarHandle(PostingList.class, "size", int.class);
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    private volatile byte[] data = EMPTY_DATA;
+    private int dataSize;
+    private int size;
+    private int last = -1;
+    private volatile int[] skipValues = EMPTY_SKIPS;
+    private volatile int[] skipOffsets = EMPTY_SKIPS;
+
+    public static PostingList of(int... values) {
+        PostingList postingList = new PostingList();
+        for (int value : values) {
+            postingList.add(value);
+        }
+        return postingList.trim();
+    }
+
+    public void add(int value) {
+        if (value == last) {
+            return;
+        }
+        if (value < last) {
+            throw new IllegalArgumentException("Values have to be added in ascending order: " + value + " after " + last);
+        }
+        byte[] data = ensureDataCapacity(dataSize + 5);
+        int delta = value - Math.max(last, 0);
+        while ((delta & ~0x7F) != 0) {
+            data[dataSize++] = (byte) ((delta & 0x7F) | 0x80);
+            delta >>>= 7;
+        }
+        data[dataSize++] = (byte) delta;
+        if (size % SKIP_INTERVAL == 0) {
+            int skip = size / SKIP_INTERVAL;
+            int[] skipValues = this.skipValues;
+            int[] skipOffsets = this.skipOffsets;
+            if (skip == skipValues.length) {
+                skipValues = Arrays.copyOf(skipValues, Math.max(4, skip * 2));
+                skipOffsets = Arrays.copyOf(skipOffsets, skipValues.length);
+                this.skipValues = skipValues;
+                this.skipOffsets = skipOffsets;
+            }
+            skipValues[skip] = value;
+            skipOffsets[skip] = dataSize;
+        }
+        last = value;
+        SIZE.setRelease(this, size + 1);
+    }
+
+    public PostingList addAll(PostingList other) {
+        ensureDataCapacity(dataSize + other.dataSize + 5);
+        Cursor cursor = other.cursor();
+        for (int value = cursor.next(); value != NO_MORE; value = cursor.next()) {
+            add(value);
+        }
+        return this;
+    }
+
+    public PostingList trim() {
+        if (data.length != dataSize) {
+            data = Arrays.copyOf(data, dataSize);
+        }
+        int skips = skipCount();
+        if (skipValues.length != skips) {
+            skipValues = Arrays.copyOf(skipValues, skips);
+            skipOffsets = Arrays.copyOf(skipOffsets, skips);
+        }
+        return this;
+    }
+
+    public int size() {
+        return (int) SIZE.getAcquire(this);
+    }
+
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    public long sizeInBytes() {
+        return data.length + 8L * skipValues.length;
+    }
+
+    public Cursor cursor() {
+        return new Cursor();
+    }
+
+    public PrimitiveIterator.OfInt iterator() {
+        Cursor cursor = cursor();
+        return new PrimitiveIterator.OfInt() {
+            private int next = cursor.next();
+
+            @Override
+            public boolean hasNext() {
+                return next != NO_MORE;
+            }
+
+            @Override
+            public int nextInt() {
+                if (next == NO_MORE) {
+                    throw new NoSuchElementException();
+                }
+                int result = next;
+                next = cursor.next();
+                return result;
+            }
+        };
+    }
+
+    public IntStream stream() {
+        int characteristics = Spliterator.ORDERED | Spliterator.SORTED | Spliterator.DISTINCT | Spliterator.NONNULL;
+        return StreamSupport.intStream(Spliterators.spliterator(iterator(), size, characteristics), false);
+    }
+
+    public int[] toArray() {
+        Cursor cursor = cursor();
+        int[] result = new int[cursor.size];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = cursor.next();
+        }
+        return result;
+    }
+
+    public static PostingList intersect(PostingList a, PostingList b) {
+        PostingList smaller = a.size() <= b.size() ? a : b;
+        PostingList bigger = smaller == a ? b : a;
+        PostingList result = new PostingList();
+        Cursor candidates = smaller.cursor();
+        Cursor other = bigger.cursor();
+        for (int value = candidates.next(); value != NO_MORE; value = candidates.next()) {
+            int found = other.advance(value);
+            if (found == NO_MORE) {
+                break;
+            }
+            if (found == value) {
+                result.add(value);
+            }
+        }
+        return result.trim();
+    }
+
+    /**
+     * The smallest value not less than {@code target} present in all lists read by {@code cursors}, or
+     * {@link #NO_MORE}. All cursors are left on that value. Cheapest when the shortest list comes first.
+     */
+    public static int advanceAll(Cursor[] cursors, int target) {
+        int candidate = target;
+        int agreed = 0;
+        for (int idx = 0; agreed < cursors.length; idx = (idx + 1) % cursors.length) {
+            int found = cursors[idx].advance(candidate);
+            if (found == NO_MORE) {
+                return NO_MORE;
+            }
+            if (found == candidate) {
+                agreed++;
+            } else {
+                candidate = found;
+                agreed = 1;
+            }
+        }
+        return candidate;
+    }
+
+    public void write(DataOutput out) throws IOException {
+        int skips = skipCount();
+        out.writeInt(size);
+        out.writeInt(last);
+        out.writeInt(dataSize);
+        out.write(data, 0, dataSize);
+        for (int i = 0; i < skips; i++) {
+            out.writeInt(skipValues[i]);
+            out.writeInt(skipOffsets[i]);
+        }
+    }
+
+    public static PostingList read(DataInput in) throws IOException {
+        PostingList postingList = new PostingList();
+        postingList.size = in.readInt();
+        postingList.last = in.readInt();
+        postingList.dataSize = in.readInt();
+        postingList.data = new byte[postingList.dataSize];
+        in.readFully(postingList.data);
+        int skips = postingList.skipCount();
+        postingList.skipValues = new int[skips];
+        postingList.skipOffsets = new int[skips];
+        for (int i = 0; i < skips; i++) {
+            postingList.skipValues[i] = in.readInt();
+            postingList.skipOffsets[i] = in.readInt();
+        }
+        return postingList;
+    }
+
+    private int skipCount() {
+        return (size + SKIP_INTERVAL - 1) / SKIP_INTERVAL;
+    }
+
+    private byte[] ensureDataCapacity(int capacity) {
+        byte[] data = this.data;
+        if (capacity > data.length) {
+            data = Arrays.copyOf(data, Math.max(capacity, data.length + (data.length >> 1)));
+            this.data = data;
+        }
+        return data;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof PostingList)) {
+            return false;
+        }
+        PostingList that = (PostingList) o;
+        return size == that.size && Arrays.equals(data, 0, dataSize, that.data, 0, that.dataSize);
+    }
+
+    @Override
+    public int hashCode() {
+        return Arrays.hashCode(toArray());
+    }
+
+    @Override
+    public String toString() {
+        return Arrays.toString(toArray());
+    }
+
+    /**
+     * Forward only reader. Both {@link #next()} and {@link #advance(int)} return {@link #NO_MORE} when exhausted.
+     */
+    public final class Cursor {
+        private final int size;
+        private final byte[] data;
+        private final int[] skipValues;
+        private final int[] skipOffsets;
+        private int index = -1;
+        private int offset;
+        private int value = -1;
+
+        private Cursor() {
+            this.size = (int) SIZE.getAcquire(PostingList.this);
+            this.data = PostingList.this.data;
+            this.skipValues = PostingList.this.skipValues;
+            this.skipOffsets = PostingList.this.skipOffsets;
+        }
+
+        public int next() {
+            if (index + 1 >= size) {
+                index = size;
+                return value = NO_MORE;
+            }
+            int delta = 0;
+            int shift = 0;
+            byte b;
+            do {
+                b = data[offset++];
+                delta |= (b & 0x7F) << shift;
+                shift += 7;
+            } while (b < 0);
+            index++;
+            value = index == 0 ? delta : value + delta;
+            return value;
+        }
+
+        public int advance(int target) {
+            if (index >= 0 && value >= target) {
+                return value;
+            }
+            int skips = (size + SKIP_INTERVAL - 1) / SKIP_INTERVAL;
+            int from = index < 0 ? 0 : index / SKIP_INTERVAL + 1;
+            if (from < skips && skipValues[from] <= target) {
+                int step = 1;
+                while (from + step < skips && skipValues[from + step] <= target) {
+                    from += step;
+                    step <<= 1;
+                }
+                int lo = from;
+                int hi = Math.min(from + step, skips) - 1;
+                while (lo < hi) {
+                    int mid = (lo + hi + 1) >>> 1;
+                    if (skipValues[mid] <= target) {
+                        lo = mid;
+                    } else {
+                        hi = mid - 1;
+                    }
+                }
+                index = lo * SKIP_INTERVAL;
+                value = skipValues[lo];
+                offset = skipOffsets[lo];
+                if (value == target) {
+                    return value;
+                }
+            }
+            int found = next();
+            while (found < target) {
+                found = next();
+            }
+            return found;
+        }
+
+        public int index() {
+            return index;
+        }
+
+        public int value() {
+            return value;
+        }
+    }
+}
@@ -0,0 +1,256 @@
+package com.slupicki.linserver;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.stream.IntStream;
+
+/**
+ * The same whitespace sensitive phrase lookup as {@link TreeSearchServiceImpl}, over a path compressed trie of token
+ * suffixes of all lines. Chains of nodes with a single child are collapsed into one edge labelled with a range of
+ * the token stream, tokens are replaced by ids from a {@link TermDictionary} and the built trie is kept in flat arrays, with children of a
+ * node numbered consecutively and sorted by their first token.
+ */
+@Service
+public class RadixTreeSearchServiceImpl implements SearchService {
+
+    private static final Logger log = LoggerFactory.getLogger(RadixTreeSearchServiceImpl.class);
+
+    private volatile Generation generation = new Generation(SourceText.current(), new Builder(new TermDictionary()).build());
+
+    @Override
+    public Matches find(String phrase) {
+        Tokenizer tokenizedPhrase = Tokenizer.get().runs(phrase.toLowerCase(LOCALE_PL));
+        Generation current = generation;
+        Trie trie = current.trie;
+        int node = Trie.ROOT;
+        int token = 0;
+        while (token < tokenizedPhrase.count()) {
+            int termId = tokenizedPhrase.termId(trie.terms, token);
+            node = termId == TermDictionary.NONE ? Trie.NONE : trie.child(node, termId);
+            if (node == Trie.NONE) {
+                return Matches.none(current.text);
+            }
+            int labelStart = trie.labelStarts[node];
+            int matched = Math.min(trie.labelLengths[node], tokenizedPhrase.count() - token);
+            for (int idx = 1; idx < matched; idx++) {
+                if (trie.tokens[labelStart + idx] != tokenizedPhrase.termId(trie.terms, token + idx)) {
+                    return Matches.none(current.text);
+                }
+            }
+            token += matched;
+        }
+        return Matches.of(current.text, trie.lines[node].cursor());
+    }
+
+    @Override
+    public void index(SourceText.Lines text) {
+        TermDictionary terms = TermDictionary.build("Radix tree tokens", text, 0, text.size(), Tokenizer::runs);
+        int[][] tokenizedLines = new int[text.size()][];
+        IntStream.range(0, text.size()).parallel().forEach(lineIdx -> {
+            Tokenizer tokenizer = Tokenizer.get().runs(text.lowerCase(lineIdx));
+            int[] tokens = new int[tokenizer.count()];
+            Arrays.setAll(tokens, token -> tokenizer.termId(terms, token));
+            tokenizedLines[lineIdx] = tokens;
+        });
+        Builder builder = new Builder(terms);
+        for (int lineIdx = 0; lineIdx < tokenizedLines.length; lineIdx++) {
+            builder.addLine(lineIdx, tokenizedLines[lineIdx]);
+            tokenizedLines[lineIdx] = null;
+        }
+        Trie trie = builder.build();
+        log.info("Radix tree has {} nodes, {} distinct tokens, {} tokens in lines, {} bytes",
+                trie.lines.length, trie.terms.size(), trie.tokens.length, trie.sizeInBytes());
+        generation = new Generation(text, trie);
+    }
+
+    @Override
+    public long indexEntries() {
+        return generation.trie.lines.length;
+    }
+
+    private static final class Generation {
+        private final SourceText.Lines text;
+        private final Trie trie;
+
+        private Generation(SourceText.Lines text, Trie trie) {
+            this.text = text;
+            this.trie = trie;
+        }
+    }
+
+    private static final class Trie {
+        private static final int ROOT = 0;
+        private static final int NONE = -1;
+
+        private final TermDictionary terms;
+        private final int[] tokens;
+        private final int[] labelStarts;
+        private final int[] labelLengths;
+        private final int[] childStarts;
+        private final PostingList[] lines;
+
+        private Trie(TermDictionary terms, int[] tokens, int[] labelStarts, int[] labelLengths, int[] childStarts,
+                     PostingList[] lines) {
+            this.terms = terms;
+            this.tokens = tokens;
+            this.labelStarts = labelStarts;
+            this.labelLengths = labelLengths;
+            this.childStarts = childStarts;
+            this.lines = lines;
+        }
+
+        private int child(int node, int termId) {
+            int lo = childStarts[node];
+            int hi = childStarts[node + 1] - 1;
+            while (lo <= hi) {
+                int mid = (lo + hi) >>> 1;
+                int midTermId = tokens[labelStarts[mid]];
+                if (midTermId < termId) {
+                    lo = mid + 1;
+                } else if (midTermId > termId) {
+                    hi = mid - 1;
+                } else {
+                    return mid;
+                }
+            }
+            return NONE;
+        }
+
+        private long sizeInBytes() {
+            long size = terms.sizeInBytes() + 4L * (tokens.length + labelStarts.length + labelLengths.length + childStarts.length) + 4L * lines.length;
+            for (PostingList postingList : lines) {
+                size += postingList.sizeInBytes();
+            }
+            return size;
+        }
+    }
+
+    private static final class Builder {
+        private final TermDictionary terms;
+        private final BuildNode root = new BuildNode(0, 0, new PostingList());
+        private int[] tokens = new int[1024];
+        private int tokenCount;
+        private int nodes = 1;
+
+        private Builder(TermDictionary terms) {
+            this.terms = terms;
+        }
+
+        private void addLine(int lineIdx, int[] lineTokens) {
+            if (tokenCount + lineTokens.length > tokens.length) {
+                tokens = Arrays.copyOf(tokens, Math.max(tokenCount + lineTokens.length, tokens.length * 2));
+            }
+            int lineStart = tokenCount;
+            System.arraycopy(lineTokens, 0, tokens, tokenCount, lineTokens.length);
+            tokenCount += lineTokens.length;
+            for (int suffix = lineStart; suffix < tokenCount; suffix++) {
+                insert(lineIdx, suffix, tokenCount);
+            }
+        }
+
+        private void insert(int lineIdx, int from, int to) {
+            BuildNode node = root;
+            int position = from;
+            while (position < to) {
+                int childIdx = node.childIndex(tokens, tokens[position]);
+                if (childIdx < 0) {
+                    node.addChild(-childIdx - 1, new BuildNode(position, to - position, PostingList.of(lineIdx)));
+                    nodes++;
+                    return;
+                }
+                BuildNode child = node.children[childIdx];
+                int matched = 1;
+                while (matched < child.labelLength && position + matched < to
+                        && tokens[child.labelStart + matched] == tokens[position + matched]) {
+                    matched++;
+                }
+                if (matched < child.labelLength) {
+                    child = split(node, childIdx, matched);
+                }
+                child.lines.add(lineIdx);
+                position += matched;
+                node = child;
+            }
+        }
+
+        private BuildNode split(BuildNode parent, int childIdx, int length) {
+            BuildNode child = parent.children[childIdx];
+            BuildNode head = new BuildNode(child.labelStart, length, new PostingList().addAll(child.lines));
+            child.labelStart += length;
+            child.labelLength -= length;
+            head.addChild(0, child);
+            parent.children[childIdx] = head;
+            nodes++;
+            return head;
+        }
+
+        private Trie build() {
+            int[] labelStarts = new int[nodes];
+            int[] labelLengths = new int[nodes];
+            int[] childStarts = new int[nodes + 1];
+            PostingList[] lines = new PostingList[nodes];
+            ArrayDeque<BuildNode> queue = new ArrayDeque<>();
+            queue.add(root);
+            int nextChild = 1;
+            for (int node = 0; node < nodes; node++) {
+                BuildNode buildNode = queue.remove();
+                labelStarts[node] = buildNode.labelStart;
+                labelLengths[node] = buildNode.labelLength;
+                lines[node] = buildNode.lines.trim();
+                childStarts[node] = nextChild;
+                for (int idx = 0; idx < buildNode.childCount; idx++) {
+                    queue.add(buildNode.children[idx]);
+                }
+                nextChild += buildNode.childCount;
+            }
+            childStarts[nodes] = nextChild;
+            return new Trie(terms, Arrays.copyOf(tokens, tokenCount), labelStarts, labelLengths, childStarts, lines);
+        }
+    }
+
+    private static final class BuildNode {
+        private static final BuildNode[] NO_CHILDREN = new BuildNode[0];
+
+        private int labelStart;
+        private int labelLength;
+        private final PostingList lines;
+        private BuildNode[] children = NO_CHILDREN;
+        private int childCount;
+
+        private BuildNode(int labelStart, int labelLength, PostingList lines) {
+            this.labelStart = labelStart;
+            this.labelLength = labelLength;
+            this.lines = lines;
+        }
+
+        private int childIndex(int[] tokens, int termId) {
+            int lo = 0;
+            int hi = childCount - 1;
+            while (lo <= hi) {
+                int mid = (lo + hi) >>> 1;
+                int midTermId = tokens[children[mid].labelStart];
+                if (midTermId < termId) {
+                    lo = mid + 1;
+                } else if (midTermId > termId) {
+                    hi = mid - 1;
+                } else {
+                    return mid;
+                }
+            }
+            return -lo - 1;
+        }
+
+        private void addChild(int idx, BuildNode child) {
+            if (childCount == children.length) {
+                children = Arrays.copyOf(children, Math.max(2, childCount * 2));
+            }
+            System.arraycopy(children, idx, children, idx + 1, childCount - idx);
+            children[idx] = child;
+            childCount++;
+        }
+    }
+}
@@ -0,0 +1,176 @@
+package com.slupicki.linserver;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.server.ResponseStatusException;
+
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Serves lines and searches directly on the container's request thread. Both are short and never block, so handing
+ * them over to another pool would only add queueing and context switches; concurrency is bounded by the connector's
+ * thread pool ({@code server.tomcat.threads.max}) while idle keep-alive connections wait in the NIO poller.
+ * <p>
+ * Search results are written line by line as the engine finds them, so a phrase matching most of the text never
+ * needs more memory than the response buffer. A search without results is answered with a bare 404 status.
+ * On a coordinator node all requests go to {@link ShardCoordinator}.
+ * <p>
+ * When a {@link Corpus} is served, lines of a document are numbered from 1 within it ({@code /get/{doc}/{line}})
+ * and a search is limited to one document with {@code doc}; without it each matching line from any document is
+ * written as {@code doc:line:text}, like {@code grep -n} does for many files. Document names that are numbers
+ * can't be used in paths.
+ */
+@RestController
+public class SearchController {
+
+    private static final String TEXT_PLAIN_UTF8 = MediaType.TEXT_PLAIN_VALUE + ";charset=UTF-8";
+
+    private final Logger log = LoggerFactory.getLogger(SearchController.class);
+
+    private final SearchService searchService;
+    private final ShardCoordinator coordinator;
+    private final SearchMetrics searchMetrics;
+
+    public SearchController(SearchService searchService, ShardCoordinator coordinator, SearchMetrics searchMetrics) {
+        this.searchService = searchService;
+        this.coordinator = coordinator;
+        this.searchMetrics = searchMetrics;
+    }
+
+    @GetMapping("/get/{line}")
+    public ByteBuffer getLine(@PathVariable("line") int line) {
+        log.debug("Request for line {}", line);
+        if (coordinator.isEnabled()) {
+            return coordinator.getLine(line);
+        }
+        return searchService.getLineBytes(line);
+    }
+
+    @GetMapping("/get/{from:\\d+}/{to:\\d+}")
+    public ByteBuffer[] getLines(@PathVariable("from") int fromLine, @PathVariable("to") int toLine) {
+        log.debug("Request for lines {}-{}", fromLine, toLine);
+        if (coordinator.isEnabled()) {
+            return coordinator.getLines(fromLine, toLine);
+        }
+        return searchService.getLinesBytes(fromLine, toLine);
+    }
+
+    @GetMapping("/get/{doc:.*\\D.*}/{line:\\d+}")
+    public ByteBuffer getDocumentLine(@PathVariable("doc") String doc, @PathVariable("line") int line) {
+        log.debug("Request for line {} of '{}'", line, doc);
+        Corpus corpus = corpus();
+        return corpus.bytes(corpus.line(doc, line));
+    }
+
+    @GetMapping("/get/{doc:.*\\D.*}/{from:\\d+}/{to:\\d+}")
+    public ByteBuffer[] getDocumentLines(@PathVariable("doc") String doc, @PathVariable("from") int fromLine,
+                                         @PathVariable("to") int toLine) {
+        log.debug("Request for lines {}-{} of '{}'", fromLine, toLine, doc);
+        Corpus corpus = corpus();
+        int from = corpus.line(doc, fromLine);
+        int to = corpus.line(doc, toLine);
+        if (from > to) {
+            throw new NotFoundException();
+        }
+        ByteBuffer[] result = new ByteBuffer[to - from + 1];
+        for (int line = from; line <= to; line++) {
+            result[line - from] = corpus.bytes(line);
+        }
+        return result;
+    }
+
+    @GetMapping("/search")
+    public void searchPhrase(@RequestParam("phrase") String phrase,
+                             @RequestParam(value = "doc", required = false) String doc,
+                             @RequestParam(value = "offset", defaultValue = "0") int offset,
+                             @RequestParam(value = "limit", required = false) Integer limit,
+                             @RequestParam(value = "count", defaultValue = "false") boolean count,
+                             HttpServletResponse response) throws IOException {
+        log.debug("Request to search phrase '{}'", phrase);
+        if (offset < 0 || (limit != null && limit < 1)) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Offset has to be at least 0 and limit at least 1");
+        }
+        if (coordinator.isEnabled()) {
+            if (doc != null) {
+                throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Documents are not served by a coordinator");
+            }
+            if (!coordinator.search(phrase, offset, limit, count, response)) {
+                response.setStatus(HttpServletResponse.SC_NOT_FOUND);
+            }
+            return;
+        }
+        SearchMetrics.Search search = searchMetrics.find(searchService, phrase);
+        try {
+            writeMatches(search, doc, offset, limit, count, response);
+        } finally {
+            search.finish();
+        }
+    }
+
+    private static void writeMatches(Matches matches, String doc, int offset, Integer limit, boolean count,
+                                     HttpServletResponse response) throws IOException {
+        Corpus corpus = matches.text() instanceof Corpus ? (Corpus) matches.text() : null;
+        if (doc != null) {
+            int docNumber = corpus != null ? corpus.document(doc) : -1;
+            if (docNumber < 0) {
+                throw new NotFoundException();
+            }
+            matches = Matches.within(matches, corpus.start(docNumber), corpus.end(docNumber));
+        }
+        boolean labelled = corpus != null && doc == null;
+        if (count) {
+            int matched = 0;
+            while (matches.next() != Matches.NO_MORE) {
+                matched++;
+            }
+            response.setContentType(TEXT_PLAIN_UTF8);
+            response.getWriter().print(matched);
+            return;
+        }
+        int line = matches.next();
+        for (int skipped = 0; skipped < offset && line != Matches.NO_MORE; skipped++) {
+            line = matches.next();
+        }
+        if (line == Matches.NO_MORE) {
+            // misses are common (typos, bots), so they skip exception handling and the error page
+            response.setStatus(HttpServletResponse.SC_NOT_FOUND);
+            return;
+        }
+        response.setContentType(TEXT_PLAIN_UTF8);
+        WritableByteChannel channel = Channels.newChannel(response.getOutputStream());
+        int remaining = limit != null ? limit : Integer.MAX_VALUE;
+        writeLine(channel, matches.text(), line, labelled);
+        while (--remaining > 0 && (line = matches.next()) != Matches.NO_MORE) {
+            ByteBufferHttpMessageConverter.write(channel, ByteBufferHttpMessageConverter.NEW_LINE);
+            writeLine(channel, matches.text(), line, labelled);
+        }
+    }
+
+    private static void writeLine(WritableByteChannel channel, SourceText.Lines text, int line, boolean labelled) throws IOException {
+        if (labelled) {
+            String label = ((Corpus) text).label(line);
+            ByteBufferHttpMessageConverter.write(channel, ByteBuffer.wrap(label.getBytes(StandardCharsets.UTF_8)));
+        }
+        ByteBufferHttpMessageConverter.write(channel, text.bytes(line));
+    }
+
+    private Corpus corpus() {
+        SourceText.Lines text = SourceText.current();
+        if (coordinator.isEnabled() || !(text instanceof Corpus)) {
+            throw new NotFoundException();
+        }
+        return (Corpus) text;
+    }
+
+}
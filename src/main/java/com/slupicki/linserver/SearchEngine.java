@@ -0,0 +1,40 @@
+package com.slupicki.linserver;
+
+import java.util.Arrays;
+import java.util.Optional;
+import java.util.stream.Collectors;
+
+/**
+ * Search engines selectable with '--engine='.
+ */
+public enum SearchEngine {
+    MAP("map", IndexSearchServiceImpl.class),
+    TREE("tree", TreeSearchServiceImpl.class),
+    RADIX("radix", RadixTreeSearchServiceImpl.class),
+    POSITIONAL("positional", PositionalIndexSearchServiceImpl.class),
+    SUFFIX("suffix", SuffixArraySearchServiceImpl.class);
+
+    private final String optionValue;
+    private final Class<? extends SearchService> type;
+
+    SearchEngine(String optionValue, Class<? extends SearchService> type) {
+        this.optionValue = optionValue;
+        this.type = type;
+    }
+
+    public String optionValue() {
+        return optionValue;
+    }
+
+    public Class<? extends SearchService> type() {
+        return type;
+    }
+
+    public static Optional<SearchEngine> of(String optionValue) {
+        return Arrays.stream(values()).filter(engine -> engine.optionValue.equals(optionValue)).findFirst();
+    }
+
+    public static String optionValues() {
+        return Arrays.stream(values()).map(SearchEngine::optionValue).collect(Collectors.joining(", "));
+    }
+}
@@ -0,0 +1,123 @@
+package com.slupicki.linserver;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.TimeGauge;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Micrometer meters of searches, index and cache. A search is timed in two stages: {@code lookup} (normalising the
+ * phrase and finding its postings) and {@code evaluate} (intersecting them, verifying candidates and writing lines),
+ * together with how many lines were verified and how many matched. Searches slower than a threshold are also
+ * recorded as {@link SlowSearchEvent} when flight recorder runs. Index and cache meters are read only when scraped.
+ */
+@Component
+public class SearchMetrics {
+
+    private final Timer lookup;
+    private final Timer evaluate;
+    private final DistributionSummary verified;
+    private final DistributionSummary matched;
+
+    public SearchMetrics(MeterRegistry registry, CachingSearchService searchCache, IndexLoader indexLoader) {
+        lookup = Timer.builder("linserver.search").tag("stage", "lookup")
+                .description("Normalising the phrase and finding its postings").register(registry);
+        evaluate = Timer.builder("linserver.search").tag("stage", "evaluate")
+                .description("Intersecting postings, verifying candidates and writing matching lines").register(registry);
+        verified = DistributionSummary.builder("linserver.search.verified").baseUnit("lines")
+                .description("Candidate lines checked against the phrase, per search").register(registry);
+        matched = DistributionSummary.builder("linserver.search.matched").baseUnit("lines")
+                .description("Matching lines read, per search").register(registry);
+        Gauge.builder("linserver.index.lines", SourceText::size).description("Lines of the served text").register(registry);
+        Gauge.builder("linserver.index.entries", searchCache, SearchService::indexEntries)
+                .description("Keys of the index: phrases, terms, tree nodes or suffixes").register(registry);
+        TimeGauge.builder("linserver.index.load", indexLoader, TimeUnit.NANOSECONDS, IndexLoader::getLoadNanos)
+                .description("Duration of the last load of text and index").register(registry);
+        FunctionCounter.builder("linserver.cache.gets", searchCache, cache -> cache.stats().hitCount()).tag("result", "hit")
+                .register(registry);
+        FunctionCounter.builder("linserver.cache.gets", searchCache, cache -> cache.stats().missCount()).tag("result", "miss")
+                .register(registry);
+        FunctionCounter.builder("linserver.cache.evictions", searchCache, cache -> cache.stats().evictionCount())
+                .register(registry);
+        Gauge.builder("linserver.cache.size", searchCache, CachingSearchService::size).register(registry);
+    }
+
+    /**
+     * Finds the phrase timing the lookup. The evaluation is timed until {@link Search#finish()}.
+     */
+    public Search find(SearchService searchService, String phrase) {
+        SlowSearchEvent event = new SlowSearchEvent();
+        event.begin();
+        long start = System.nanoTime();
+        Matches matches = searchService.find(phrase);
+        long found = System.nanoTime();
+        lookup.record(found - start, TimeUnit.NANOSECONDS);
+        return new Search(phrase, matches, event, found - start, found);
+    }
+
+    /**
+     * Matches counting the lines read from them.
+     */
+    public final class Search implements Matches {
+        private final String phrase;
+        private final Matches matches;
+        private final SlowSearchEvent event;
+        private final long lookupNanos;
+        private final long found;
+        private int matchedLines;
+
+        private Search(String phrase, Matches matches, SlowSearchEvent event, long lookupNanos, long found) {
+            this.phrase = phrase;
+            this.matches = matches;
+            this.event = event;
+            this.lookupNanos = lookupNanos;
+            this.found = found;
+        }
+
+        @Override
+        public SourceText.Lines text() {
+            return matches.text();
+        }
+
+        @Override
+        public int next() {
+            return counted(matches.next());
+        }
+
+        @Override
+        public int advance(int target) {
+            return counted(matches.advance(target));
+        }
+
+        @Override
+        public int verified() {
+            return matches.verified();
+        }
+
+        private int counted(int line) {
+            if (line != NO_MORE) {
+                matchedLines++;
+            }
+            return line;
+        }
+
+        public void finish() {
+            evaluate.record(System.nanoTime() - found, TimeUnit.NANOSECONDS);
+            verified.record(matches.verified());
+            matched.record(matchedLines);
+            event.end();
+            if (event.shouldCommit()) {
+                event.phrase = phrase;
+                event.lookup = lookupNanos;
+                event.matched = matchedLines;
+                event.verified = matches.verified();
+                event.commit();
+            }
+        }
+    }
+}
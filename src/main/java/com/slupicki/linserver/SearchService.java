@@ -1,5 +1,6 @@
 package com.slupicki.linserver;
 
+import java.nio.ByteBuffer;
 import java.util.Locale;
 
 public interface SearchService {
@@ -10,7 +11,59 @@ public interface SearchService {
         return SourceText.getLine(line - 1);
     }
 
-    String search(String phrase);
+    default ByteBuffer getLineBytes(int line) {
+        return SourceText.getLineBytes(line - 1);
+    }
+
+    default ByteBuffer[] getLinesBytes(int fromLine, int toLine) {
+        if (fromLine < 1 || fromLine > toLine || toLine > SourceText.size()) {
+            throw new NotFoundException();
+        }
+        ByteBuffer[] result = new ByteBuffer[toLine - fromLine + 1];
+        for (int line = fromLine; line <= toLine; line++) {
+            result[line - fromLine] = getLineBytes(line);
+        }
+        return result;
+    }
+
+    /**
+     * Lines joined with '\n' of all {@link #find(String) matches}.
+     */
+    default String search(String phrase) {
+        return search(phrase, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Lines joined with '\n' of the first {@code limit} {@link #find(String) matches}. Matches past the limit are
+     * never looked for.
+     */
+    default String search(String phrase, int limit) {
+        Matches matches = find(phrase);
+        int line = matches.next();
+        if (line == Matches.NO_MORE || limit < 1) {
+            throw new NotFoundException();
+        }
+        StringBuilder result = new StringBuilder(matches.text().get(line));
+        for (int found = 1; found < limit && (line = matches.next()) != Matches.NO_MORE; found++) {
+            result.append('\n').append(matches.text().get(line));
+        }
+        return result.toString();
+    }
 
-    void index();
+    Matches find(String phrase);
+
+    default void index() {
+        index(SourceText.current());
+    }
+
+    void index(SourceText.Lines text);
+
+    /**
+     * Number of keys of the current index: phrases, terms, tree nodes or suffixes, depending on the engine.
+     */
+    long indexEntries();
+
+    default void append(SourceText.Lines text, int fromLine) {
+        index(text);
+    }
 }
@@ -0,0 +1,349 @@
+package com.slupicki.linserver;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Service;
+import org.springframework.web.server.ResponseStatusException;
+
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+/**
+ * Serves a coordinator node by forwarding requests to shard nodes, each started with {@code --shard=k/n} on the
+ * same file and serving one contiguous range of its lines. Ranges are asked for ({@code GET /admin/shard}) on first
+ * use and again after {@code POST /admin/reload}. A search goes to all shards at once and waits until all of them
+ * answer, so a failed shard never leaves a partial result; their responses are already in line order, so they are
+ * merged by streaming them to the client one after another.
+ */
+@Service
+public class ShardCoordinator {
+
+    private static final Logger log = LoggerFactory.getLogger(ShardCoordinator.class);
+    private static final String TEXT_PLAIN_UTF8 = MediaType.TEXT_PLAIN_VALUE + ";charset=UTF-8";
+
+    private final ObjectMapper objectMapper;
+    private final HttpClient httpClient = HttpClient.newBuilder()
+            .version(HttpClient.Version.HTTP_1_1)
+            .connectTimeout(Duration.ofSeconds(5))
+            .build();
+
+    private volatile List<URI> shardUris = List.of();
+    private volatile List<Shard> shards;
+
+    public ShardCoordinator(ObjectMapper objectMapper) {
+        this.objectMapper = objectMapper;
+    }
+
+    public void configure(List<URI> shardUris) {
+        this.shardUris = List.copyOf(shardUris);
+        this.shards = null;
+    }
+
+    public boolean isEnabled() {
+        return !shardUris.isEmpty();
+    }
+
+    public List<URI> getShardUris() {
+        return shardUris;
+    }
+
+    /**
+     * Forgets line ranges of shards, so they are asked for again by the next request.
+     */
+    public void refresh() {
+        shards = null;
+    }
+
+    public ByteBuffer getLine(int line) {
+        for (Shard shard : shards()) {
+            if (shard.contains(line)) {
+                HttpResponse<byte[]> response = send(shard, "/get/" + shard.localLine(line));
+                return ByteBuffer.wrap(response.body());
+            }
+        }
+        throw new NotFoundException();
+    }
+
+    public ByteBuffer[] getLines(int fromLine, int toLine) {
+        List<Shard> current = shards();
+        Shard last = current.get(current.size() - 1);
+        if (fromLine < 1 || fromLine > toLine || toLine >= last.firstLine + last.lines) {
+            throw new NotFoundException();
+        }
+        List<Shard> owners = new ArrayList<>();
+        List<CompletableFuture<HttpResponse<byte[]>>> responses = new ArrayList<>();
+        for (Shard shard : current) {
+            int from = Math.max(fromLine, shard.firstLine);
+            int to = Math.min(toLine, shard.firstLine + shard.lines - 1);
+            if (from <= to) {
+                owners.add(shard);
+                responses.add(sendAsync(shard.uri, "/get/" + shard.localLine(from) + "/" + shard.localLine(to),
+                        HttpResponse.BodyHandlers.ofByteArray()));
+            }
+        }
+        ByteBuffer[] result = new ByteBuffer[owners.size()];
+        for (int idx = 0; idx < result.length; idx++) {
+            URI uri = owners.get(idx).uri;
+            result[idx] = ByteBuffer.wrap(checked(uri, join(uri, responses.get(idx))).body());
+        }
+        return result;
+    }
+
+    /**
+     * Writes lines of all shards matching the phrase, or their count, to the response. Returns false when no line was
+     * written, leaving the response untouched.
+     */
+    public boolean search(String phrase, int offset, Integer limit, boolean count, HttpServletResponse response) throws IOException {
+        List<Shard> current = shards();
+        String query = "/search?phrase=" + URLEncoder.encode(phrase, StandardCharsets.UTF_8);
+        if (count) {
+            List<CompletableFuture<HttpResponse<String>>> responses = new ArrayList<>();
+            for (Shard shard : current) {
+                responses.add(sendAsync(shard.uri, query + "&count=true", HttpResponse.BodyHandlers.ofString()));
+            }
+            long matched = 0;
+            for (int idx = 0; idx < current.size(); idx++) {
+                URI uri = current.get(idx).uri;
+                matched += Long.parseLong(checked(uri, join(uri, responses.get(idx))).body().trim());
+            }
+            response.setContentType(TEXT_PLAIN_UTF8);
+            response.getWriter().print(matched);
+            return true;
+        }
+        if (limit != null) {
+            query += "&limit=" + (int) Math.min(Integer.MAX_VALUE, (long) offset + limit);
+        }
+        List<CompletableFuture<HttpResponse<InputStream>>> responses = new ArrayList<>();
+        for (Shard shard : current) {
+            responses.add(sendAsync(shard.uri, query, HttpResponse.BodyHandlers.ofInputStream()));
+        }
+        LineCopier copier = new LineCopier(response, offset, limit != null ? limit : Integer.MAX_VALUE);
+        try {
+            List<HttpResponse<InputStream>> found = new ArrayList<>();
+            for (int idx = 0; idx < current.size(); idx++) {
+                URI uri = current.get(idx).uri;
+                HttpResponse<InputStream> shardResponse = join(uri, responses.get(idx));
+                if (shardResponse.statusCode() != HttpStatus.NOT_FOUND.value()) {
+                    found.add(checked(uri, shardResponse));
+                }
+            }
+            for (HttpResponse<InputStream> shardResponse : found) {
+                if (!copier.copy(shardResponse.body())) {
+                    break;
+                }
+            }
+        } finally {
+            responses.forEach(shardResponse -> shardResponse.thenAccept(ShardCoordinator::discard));
+        }
+        return copier.written > 0;
+    }
+
+    private List<Shard> shards() {
+        List<Shard> current = shards;
+        if (current != null) {
+            return current;
+        }
+        List<URI> uris = shardUris;
+        List<CompletableFuture<HttpResponse<String>>> responses = new ArrayList<>();
+        for (URI uri : uris) {
+            responses.add(sendAsync(uri, "/admin/shard", HttpResponse.BodyHandlers.ofString()));
+        }
+        current = new ArrayList<>();
+        for (int idx = 0; idx < uris.size(); idx++) {
+            URI uri = uris.get(idx);
+            HttpResponse<String> response = join(uri, responses.get(idx));
+            if (response.statusCode() != HttpStatus.OK.value()) {
+                throw unavailable(uri, "answered " + response.statusCode() + " when asked for its range");
+            }
+            JsonNode info;
+            try {
+                info = objectMapper.readTree(response.body());
+            } catch (IOException e) {
+                throw unavailable(uri, "sent malformed range: " + e.getMessage());
+            }
+            if (info.path("shard").asInt() != idx + 1 || info.path("shards").asInt() != uris.size()) {
+                throw unavailable(uri, "is shard " + info.path("shard").asInt() + " of " + info.path("shards").asInt()
+                        + ", expected " + (idx + 1) + " of " + uris.size());
+            }
+            int expectedFirstLine = idx == 0 ? 1 : current.get(idx - 1).firstLine + current.get(idx - 1).lines;
+            if (info.path("firstLine").asInt() != expectedFirstLine) {
+                throw unavailable(uri, "starts at line " + info.path("firstLine").asInt() + ", expected " + expectedFirstLine);
+            }
+            current.add(new Shard(uri, expectedFirstLine, info.path("lines").asInt()));
+        }
+        log.info("Shard ranges: {}", current);
+        shards = current;
+        return current;
+    }
+
+    private HttpResponse<byte[]> send(Shard shard, String path) {
+        return checked(shard.uri, join(shard.uri, sendAsync(shard.uri, path, HttpResponse.BodyHandlers.ofByteArray())));
+    }
+
+    private <T> CompletableFuture<HttpResponse<T>> sendAsync(URI uri, String path, HttpResponse.BodyHandler<T> bodyHandler) {
+        HttpRequest request = HttpRequest.newBuilder(uri.resolve(path)).GET().build();
+        return httpClient.sendAsync(request, bodyHandler);
+    }
+
+    private <T> HttpResponse<T> join(URI uri, CompletableFuture<HttpResponse<T>> response) {
+        try {
+            return response.join();
+        } catch (CompletionException e) {
+            throw unavailable(uri, "failed: " + e.getCause());
+        }
+    }
+
+    /**
+     * The response if it is OK. A missing line is passed on as {@link NotFoundException}.
+     */
+    private <T> HttpResponse<T> checked(URI uri, HttpResponse<T> response) {
+        if (response.statusCode() == HttpStatus.NOT_FOUND.value()) {
+            throw new NotFoundException();
+        }
+        if (response.statusCode() != HttpStatus.OK.value()) {
+            throw unavailable(uri, "answered " + response.statusCode());
+        }
+        return response;
+    }
+
+    private static ResponseStatusException unavailable(URI uri, String reason) {
+        String message = "Shard " + uri + " " + reason;
+        log.warn(message);
+        return new ResponseStatusException(HttpStatus.BAD_GATEWAY, message);
+    }
+
+    private static void discard(HttpResponse<InputStream> response) {
+        try {
+            response.body().close();
+        } catch (IOException e) {
+            log.debug("Closing response of {} failed", response.uri(), e);
+        }
+    }
+
+    private static final class Shard {
+        private final URI uri;
+        private final int firstLine;
+        private final int lines;
+
+        private Shard(URI uri, int firstLine, int lines) {
+            this.uri = uri;
+            this.firstLine = firstLine;
+            this.lines = lines;
+        }
+
+        private boolean contains(int line) {
+            return line >= firstLine && line < firstLine + lines;
+        }
+
+        private int localLine(int line) {
+            return line - firstLine + 1;
+        }
+
+        @Override
+        public String toString() {
+            return uri + " " + firstLine + "-" + (firstLine + lines - 1);
+        }
+    }
+
+    /**
+     * Copies lines of consecutive shard responses (lines joined with '\n') to the client, skipping the first
+     * {@code offset} of them and stopping after {@code limit}.
+     */
+    private static final class LineCopier {
+        private final HttpServletResponse response;
+        private final byte[] buffer = new byte[8192];
+        private OutputStream out;
+        private int toSkip;
+        private int toWrite;
+        private int written;
+
+        private LineCopier(HttpServletResponse response, int offset, int limit) {
+            this.response = response;
+            this.toSkip = offset;
+            this.toWrite = limit;
+        }
+
+        /**
+         * Returns false when the limit is reached and no more responses are needed.
+         */
+        private boolean copy(InputStream body) throws IOException {
+            boolean inLine = false;
+            for (int read = body.read(buffer); read >= 0; read = body.read(buffer)) {
+                int from = 0;
+                while (from < read) {
+                    if (!inLine) {
+                        if (!startLine()) {
+                            return false;
+                        }
+                        inLine = true;
+                    }
+                    int end = from;
+                    while (end < read && buffer[end] != '\n') {
+                        end++;
+                    }
+                    if (toSkip == 0) {
+                        output().write(buffer, from, end - from);
+                    }
+                    if (end < read) {
+                        endLine();
+                        inLine = false;
+                    }
+                    from = end + 1;
+                }
+            }
+            if (!inLine && !startLine()) {
+                return false;
+            }
+            endLine();
+            return toWrite > 0;
+        }
+
+        private boolean startLine() throws IOException {
+            if (toSkip > 0) {
+                return true;
+            }
+            if (toWrite == 0) {
+                return false;
+            }
+            if (written > 0) {
+                output().write('\n');
+            }
+            return true;
+        }
+
+        private void endLine() {
+            if (toSkip > 0) {
+                toSkip--;
+            } else {
+                toWrite--;
+                written++;
+            }
+        }
+
+        private OutputStream output() throws IOException {
+            if (out == null) {
+                response.setContentType(TEXT_PLAIN_UTF8);
+                out = response.getOutputStream();
+            }
+            return out;
+        }
+    }
+}
@@ -0,0 +1,36 @@
+package com.slupicki.linserver;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+import jdk.jfr.Timespan;
+
+/**
+ * Flight recorder event of a search slower than the threshold (50 ms unless changed in the recording settings),
+ * measured from the index lookup to the last line handed to the client.
+ */
+@Name("com.slupicki.linserver.SlowSearch")
+@Label("Slow Search")
+@Category("Linserver")
+@Description("Search taking longer than the threshold, from index lookup to the last line written")
+@Threshold("50 ms")
+@StackTrace(false)
+class SlowSearchEvent extends Event {
+
+    @Label("Phrase")
+    String phrase;
+
+    @Label("Lookup")
+    @Timespan
+    long lookup;
+
+    @Label("Matched Lines")
+    int matched;
+
+    @Label("Verified Lines")
+    int verified;
+}
@@ -1,44 +1,192 @@
 package com.slupicki.linserver;
 
-import com.google.common.collect.Iterators;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.stream.Stream;
 
 public final class SourceText {
 
     private static final Logger log = LoggerFactory.getLogger(SourceText.class);
 
-    private static String[] lines;
+    private static volatile Lines lines = new ArrayLines(new String[0]);
 
     private SourceText() {}
 
     public static String getLine(int n) {
-        if (n < 0 || n >= lines.length) {
+        return getLine(lines, n);
+    }
+
+    public static String getLine(Lines source, int n) {
+        if (n < 0 || n >= source.size()) {
             throw new NotFoundException();
         }
-        return lines[n];
+        return source.get(n);
     }
 
-    public static void setLines(String[] sourceLines) {
+    public static ByteBuffer getLineBytes(int n) {
+        Lines source = lines;
+        if (n < 0 || n >= source.size()) {
+            throw new NotFoundException();
+        }
+        return source.bytes(n);
+    }
+
+    public static Lines current() {
+        return lines;
+    }
+
+    public static void publish(Lines sourceLines) {
         lines = sourceLines;
     }
 
+    public static void setLines(String[] sourceLines) {
+        lines = of(sourceLines);
+    }
+
+    public static Lines of(String... sourceLines) {
+        return new ArrayLines(sourceLines);
+    }
+
     public static Iterable<String> lines() {
-        return () -> Iterators.forArray(lines);
+        Lines source = lines;
+        return () -> new Iterator<>() {
+            private int next = 0;
+
+            @Override
+            public boolean hasNext() {
+                return next < source.size();
+            }
+
+            @Override
+            public String next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                return source.get(next++);
+            }
+        };
     }
 
     public static int size() {
-        return lines.length;
+        return lines.size();
     }
 
     public static void load(String fileName) throws IOException {
+        publish(read(fileName));
+    }
+
+    public static void map(String fileName) throws IOException {
+        publish(readMapped(fileName));
+    }
+
+    public static Lines read(String fileName) throws IOException {
+        return read(fileName, 0, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Lines from {@code fromLine} (inclusive) to {@code toLine} (exclusive), counted from 0. Other lines are skipped
+     * while reading, so they never take heap.
+     */
+    public static Lines read(String fileName, int fromLine, int toLine) throws IOException {
         Path path = Paths.get(fileName);
-        lines = Files.lines(path).toArray(String[]::new);
-        log.info("Readed {} lines from '{}'", lines.length, fileName);
+        try (Stream<String> fileLines = Files.lines(path)) {
+            Lines result = new ArrayLines(fileLines.skip(fromLine).limit(toLine - fromLine).toArray(String[]::new));
+            log.info("Readed {} lines from '{}'", result.size(), fileName);
+            return result;
+        }
+    }
+
+    public static int countLines(String fileName) throws IOException {
+        try (Stream<String> fileLines = Files.lines(Paths.get(fileName))) {
+            return Math.toIntExact(fileLines.count());
+        }
+    }
+
+    public static Lines readMapped(String fileName) throws IOException {
+        MappedLines mappedLines = MappedLines.map(Paths.get(fileName));
+        log.info("Mapped {} lines ({} bytes) from '{}'", mappedLines.size(), mappedLines.sizeInBytes(), fileName);
+        return mappedLines;
+    }
+
+    public interface Lines {
+
+        int size();
+
+        String get(int n);
+
+        default String lowerCase(int n) {
+            return get(n).toLowerCase(SearchService.LOCALE_PL);
+        }
+
+        default ByteBuffer bytes(int n) {
+            return ByteBuffer.wrap(get(n).getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    /**
+     * Lines from {@code fromLine} (inclusive) to {@code toLine} (exclusive) of {@code source}, numbered from 0.
+     */
+    public static Lines slice(Lines source, int fromLine, int toLine) {
+        return new Lines() {
+            @Override
+            public int size() {
+                return toLine - fromLine;
+            }
+
+            @Override
+            public String get(int n) {
+                return source.get(fromLine + n);
+            }
+
+            @Override
+            public String lowerCase(int n) {
+                return source.lowerCase(fromLine + n);
+            }
+
+            @Override
+            public ByteBuffer bytes(int n) {
+                return source.bytes(fromLine + n);
+            }
+        };
+    }
+
+    /**
+     * Lines on heap with their lower case versions computed up front (shared when a line has no upper case letters),
+     * so searches verify candidates without allocating.
+     */
+    private static final class ArrayLines implements Lines {
+        private final String[] lines;
+        private final String[] lowerCaseLines;
+
+        private ArrayLines(String[] lines) {
+            this.lines = lines;
+            this.lowerCaseLines = new String[lines.length];
+            Arrays.parallelSetAll(lowerCaseLines, n -> lines[n].toLowerCase(SearchService.LOCALE_PL));
+        }
+
+        @Override
+        public int size() {
+            return lines.length;
+        }
+
+        @Override
+        public String get(int n) {
+            return lines[n];
+        }
+
+        @Override
+        public String lowerCase(int n) {
+            return lowerCaseLines[n];
+        }
     }
 }
@@ -0,0 +1,123 @@
+package com.slupicki.linserver;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Service;
+
+import java.util.Arrays;
+
+/**
+ * Finds lines containing the phrase as any substring, case insensitive. Lower cased lines are concatenated with
+ * '\n' between them and indexed by a suffix array built in linear time, so memory is 6 bytes per character of
+ * text plus 4 per line. Suffixes starting with the phrase form one range of the array, found by two binary
+ * searches which skip characters already known to match both ends of the range.
+ */
+@Service
+public class SuffixArraySearchServiceImpl implements SearchService {
+
+    private static final Logger log = LoggerFactory.getLogger(SuffixArraySearchServiceImpl.class);
+    private static final char LINE_SEPARATOR = '\n';
+
+    private volatile Generation generation = new Generation(SourceText.current(), new char[0], new int[0], new int[0]);
+
+    @Override
+    public Matches find(String phrase) {
+        String lowerCasePhrase = phrase.toLowerCase(LOCALE_PL);
+        Generation current = generation;
+        if (lowerCasePhrase.isEmpty() || lowerCasePhrase.indexOf(LINE_SEPARATOR) >= 0) {
+            return Matches.none(current.text);
+        }
+        int from = current.bound(lowerCasePhrase, false);
+        int to = current.bound(lowerCasePhrase, true);
+        int[] matchedLines = new int[to - from];
+        for (int idx = from; idx < to; idx++) {
+            matchedLines[idx - from] = current.lineOf(current.suffixes[idx]);
+        }
+        Arrays.sort(matchedLines);
+        int distinct = 0;
+        for (int idx = 0; idx < matchedLines.length; idx++) {
+            if (idx == 0 || matchedLines[idx] != matchedLines[idx - 1]) {
+                matchedLines[distinct++] = matchedLines[idx];
+            }
+        }
+        return Matches.of(current.text, Arrays.copyOf(matchedLines, distinct));
+    }
+
+    @Override
+    public void index(SourceText.Lines text) {
+        int lines = text.size();
+        int[] lineStarts = new int[lines];
+        StringBuilder concatenated = new StringBuilder();
+        for (int lineNumber = 0; lineNumber < lines; lineNumber++) {
+            if (lineNumber > 0) {
+                concatenated.append(LINE_SEPARATOR);
+            }
+            lineStarts[lineNumber] = concatenated.length();
+            concatenated.append(text.lowerCase(lineNumber));
+        }
+        char[] chars = new char[concatenated.length()];
+        concatenated.getChars(0, chars.length, chars, 0);
+        long start = System.currentTimeMillis();
+        int[] suffixes = SuffixArrays.of(chars, chars.length);
+        log.info("Suffix array of {} characters in {} lines built in {}ms", chars.length, lines, System.currentTimeMillis() - start);
+        generation = new Generation(text, chars, suffixes, lineStarts);
+    }
+
+    @Override
+    public long indexEntries() {
+        return generation.suffixes.length;
+    }
+
+    private static final class Generation {
+        private final SourceText.Lines text;
+        private final char[] chars;
+        private final int[] suffixes;
+        private final int[] lineStarts;
+
+        private Generation(SourceText.Lines text, char[] chars, int[] suffixes, int[] lineStarts) {
+            this.text = text;
+            this.chars = chars;
+            this.suffixes = suffixes;
+            this.lineStarts = lineStarts;
+        }
+
+        /**
+         * Index of the first suffix not smaller than the phrase or, when {@code after} is set, of the first one
+         * greater than the phrase and not starting with it.
+         */
+        private int bound(String phrase, boolean after) {
+            int lo = 0;
+            int hi = suffixes.length;
+            int matchedLo = 0;
+            int matchedHi = 0;
+            while (lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                int suffix = suffixes[mid];
+                int matched = Math.min(matchedLo, matchedHi);
+                while (matched < phrase.length() && suffix + matched < chars.length
+                        && chars[suffix + matched] == phrase.charAt(matched)) {
+                    matched++;
+                }
+                boolean before;
+                if (matched == phrase.length()) {
+                    before = after;
+                } else {
+                    before = suffix + matched == chars.length || chars[suffix + matched] < phrase.charAt(matched);
+                }
+                if (before) {
+                    lo = mid + 1;
+                    matchedLo = matched;
+                } else {
+                    hi = mid;
+                    matchedHi = matched;
+                }
+            }
+            return lo;
+        }
+
+        private int lineOf(int position) {
+            int line = Arrays.binarySearch(lineStarts, position);
+            return line >= 0 ? line : -line - 2;
+        }
+    }
+}
@@ -0,0 +1,59 @@
+package com.slupicki.linserver;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Completions of a partially typed phrase, served from the trie of {@link TreeSearchServiceImpl}.
+ */
+@RestController
+public class SuggestController {
+
+    private final Logger log = LoggerFactory.getLogger(SuggestController.class);
+
+    private final CachingSearchService searchCache;
+    private final ShardCoordinator coordinator;
+
+    public SuggestController(CachingSearchService searchCache, ShardCoordinator coordinator) {
+        this.searchCache = searchCache;
+        this.coordinator = coordinator;
+    }
+
+    @GetMapping("/suggest")
+    public List<Map<String, Object>> suggest(@RequestParam("prefix") String prefix,
+                                             @RequestParam(value = "limit", defaultValue = "10") int limit) {
+        log.debug("Request for suggestions for '{}'", prefix);
+        if (prefix.isEmpty()) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Prefix can't be empty");
+        }
+        if (limit < 1 || limit > TreeSearchServiceImpl.MAX_SUGGESTIONS) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST,
+                    "Limit has to be from 1 to " + TreeSearchServiceImpl.MAX_SUGGESTIONS);
+        }
+        if (coordinator.isEnabled()) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Suggestions are not served by a coordinator");
+        }
+        SearchService engine = searchCache.getDelegate();
+        if (!(engine instanceof TreeSearchServiceImpl)) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Suggestions are served only by '--engine=tree'");
+        }
+        List<Map<String, Object>> result = new ArrayList<>();
+        for (TreeSearchServiceImpl.Suggestion suggestion : ((TreeSearchServiceImpl) engine).suggest(prefix, limit)) {
+            Map<String, Object> completion = new LinkedHashMap<>();
+            completion.put("phrase", suggestion.phrase);
+            completion.put("lines", suggestion.lines);
+            result.add(completion);
+        }
+        return result;
+    }
+}
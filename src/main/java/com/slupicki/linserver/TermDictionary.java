@@ -0,0 +1,198 @@
+package com.slupicki.linserver;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.CharBuffer;
+import java.util.Arrays;
+import java.util.function.BiFunction;
+
+/**
+ * Distinct tokens numbered from 0 in the order they were added. Characters of all tokens are kept in one array and a
+ * token is added or looked up by its bounds in a text, so neither creates a string. One thread may add tokens while
+ * others look them up: a token is published with release semantics after its characters, and arrays replaced when
+ * they grow are published with their contents, so a lookup finds a new token either completely or not at all.
+ */
+final class TermDictionary {
+
+    static final int NONE = -1;
+
+    private static final VarHandle TABLE = MethodHandles.arrayElementVarHandle(int[].class);
+
+    private volatile char[] chars = new char[256];
+    private int charCount;
+    private volatile int[] starts = new int[17];
+    private volatile int[] hashes = new int[16];
+    private int size;
+    private volatile int[] table = new int[32];
+
+    /**
+     * Dictionary of all tokens of lines from {@code fromLine} to {@code toLine} (exclusive), built on the common
+     * fork/join pool. Tokens of earlier lines get lower ids.
+     */
+    static TermDictionary build(String name, SourceText.Lines text, int fromLine, int toLine,
+                                BiFunction<Tokenizer, CharSequence, Tokenizer> tokenization) {
+        TermDictionary terms = ParallelIndexer.build(name, fromLine, toLine, (from, to) -> {
+            TermDictionary shard = new TermDictionary();
+            Tokenizer tokenizer = Tokenizer.get();
+            for (int lineNumber = from; lineNumber < to; lineNumber++) {
+                tokenization.apply(tokenizer, text.lowerCase(lineNumber));
+                for (int token = 0; token < tokenizer.count(); token++) {
+                    tokenizer.addTerm(shard, token);
+                }
+            }
+            return shard;
+        }, TermDictionary::addAll);
+        return terms.trim();
+    }
+
+    int size() {
+        return size;
+    }
+
+    /**
+     * Id of the token, added if it is new.
+     */
+    int add(CharSequence text, int start, int end) {
+        int hash = hash(text, start, end);
+        int slot = find(text, start, end, hash);
+        if (table[slot] != 0) {
+            return table[slot] - 1;
+        }
+        int length = end - start;
+        char[] chars = this.chars;
+        if (charCount + length > chars.length) {
+            chars = Arrays.copyOf(chars, Math.max(charCount + length, chars.length * 2));
+            this.chars = chars;
+        }
+        for (int idx = start; idx < end; idx++) {
+            chars[charCount++] = text.charAt(idx);
+        }
+        if (size == hashes.length) {
+            hashes = Arrays.copyOf(hashes, Math.max(16, size * 2));
+            starts = Arrays.copyOf(starts, hashes.length + 1);
+        }
+        hashes[size] = hash;
+        starts[++size] = charCount;
+        TABLE.setRelease(table, slot, size);
+        if (size * 2 > table.length) {
+            rehash(table.length * 2);
+        }
+        return size - 1;
+    }
+
+    /**
+     * Id of the token or {@link #NONE}.
+     */
+    int id(CharSequence text, int start, int end) {
+        int[] current = table;
+        return (int) TABLE.getAcquire(current, find(current, text, start, end, hash(text, start, end))) - 1;
+    }
+
+    String term(int id) {
+        int[] starts = this.starts;
+        return new String(chars, starts[id], starts[id + 1] - starts[id]);
+    }
+
+    /**
+     * Adds tokens of {@code other} missing here, they get ids after the ones already here.
+     */
+    TermDictionary addAll(TermDictionary other) {
+        CharSequence otherChars = CharBuffer.wrap(other.chars);
+        for (int id = 0; id < other.size; id++) {
+            add(otherChars, other.starts[id], other.starts[id + 1]);
+        }
+        return this;
+    }
+
+    TermDictionary copy() {
+        TermDictionary copy = new TermDictionary();
+        copy.chars = chars.clone();
+        copy.charCount = charCount;
+        copy.starts = starts.clone();
+        copy.hashes = hashes.clone();
+        copy.size = size;
+        copy.table = table.clone();
+        return copy;
+    }
+
+    TermDictionary trim() {
+        chars = Arrays.copyOf(chars, charCount);
+        starts = Arrays.copyOf(starts, size + 1);
+        hashes = Arrays.copyOf(hashes, size);
+        return this;
+    }
+
+    long sizeInBytes() {
+        return 2L * chars.length + 4L * (starts.length + hashes.length + table.length);
+    }
+
+    void write(DataOutput out) throws IOException {
+        out.writeInt(size);
+        for (int id = 0; id < size; id++) {
+            out.writeUTF(term(id));
+        }
+    }
+
+    static TermDictionary read(DataInput in) throws IOException {
+        TermDictionary terms = new TermDictionary();
+        for (int count = in.readInt(); count > 0; count--) {
+            String term = in.readUTF();
+            terms.add(term, 0, term.length());
+        }
+        return terms.trim();
+    }
+
+    private int find(CharSequence text, int start, int end, int hash) {
+        return find(table, text, start, end, hash);
+    }
+
+    private int find(int[] table, CharSequence text, int start, int end, int hash) {
+        int mask = table.length - 1;
+        for (int slot = hash & mask; ; slot = (slot + 1) & mask) {
+            int id = (int) TABLE.getAcquire(table, slot) - 1;
+            if (id == NONE || (hashes[id] == hash && equals(id, text, start, end))) {
+                return slot;
+            }
+        }
+    }
+
+    private boolean equals(int id, CharSequence text, int start, int end) {
+        int[] starts = this.starts;
+        char[] chars = this.chars;
+        int from = starts[id];
+        if (starts[id + 1] - from != end - start) {
+            return false;
+        }
+        for (int idx = start; idx < end; idx++) {
+            if (chars[from++] != text.charAt(idx)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void rehash(int capacity) {
+        int[] rehashed = new int[capacity];
+        int mask = capacity - 1;
+        for (int id = 0; id < size; id++) {
+            int slot = hashes[id] & mask;
+            while (rehashed[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+            rehashed[slot] = id + 1;
+        }
+        table = rehashed;
+    }
+
+    private static int hash(CharSequence text, int start, int end) {
+        int hash = 0;
+        for (int idx = start; idx < end; idx++) {
+            hash = 31 * hash + text.charAt(idx);
+        }
+        hash *= 0x9E3779B9;
+        return hash ^ (hash >>> 16);
+    }
+}
@@ -0,0 +1,136 @@
+package com.slupicki.linserver;
+
+import java.util.Arrays;
+
+/**
+ * Splits text into tokens without regular expressions or intermediate strings: only bounds of tokens are kept, in
+ * arrays reused between calls. Not thread safe - keep one per thread ({@link #get()}).
+ */
+final class Tokenizer {
+
+    private static final ThreadLocal<Tokenizer> TOKENIZERS = ThreadLocal.withInitial(Tokenizer::new);
+
+    private final StringBuilder phrase = new StringBuilder();
+    private CharSequence text = "";
+    private int[] starts = new int[16];
+    private int[] ends = new int[16];
+    private int count;
+
+    static Tokenizer get() {
+        return TOKENIZERS.get();
+    }
+
+    /**
+     * Words as {@code text.strip().split("\\P{L}+", -1)} returns them: letter runs, plus an empty word before a
+     * leading and after a trailing separator.
+     */
+    Tokenizer words(CharSequence text) {
+        reset(text);
+        int from = 0;
+        int to = text.length();
+        while (from < to && Character.isWhitespace(Character.codePointAt(text, from))) {
+            from += Character.charCount(Character.codePointAt(text, from));
+        }
+        while (to > from && Character.isWhitespace(Character.codePointBefore(text, to))) {
+            to -= Character.charCount(Character.codePointBefore(text, to));
+        }
+        int wordStart = from;
+        int position = from;
+        while (position < to) {
+            int codePoint = Character.codePointAt(text, position);
+            if (Character.isLetter(codePoint)) {
+                position += Character.charCount(codePoint);
+                continue;
+            }
+            add(wordStart, position);
+            while (position < to && !Character.isLetter(codePoint = Character.codePointAt(text, position))) {
+                position += Character.charCount(codePoint);
+            }
+            wordStart = position;
+        }
+        add(wordStart, to);
+        return this;
+    }
+
+    /**
+     * Alternating runs of letters and of other characters, so every character belongs to a token.
+     * Empty text is a single empty token.
+     */
+    Tokenizer runs(CharSequence text) {
+        reset(text);
+        int length = text.length();
+        int runStart = 0;
+        boolean runOfLetters = true;
+        for (int position = 0; position < length; ) {
+            int codePoint = Character.codePointAt(text, position);
+            boolean letter = Character.isLetter(codePoint);
+            if (letter != runOfLetters && position > runStart) {
+                add(runStart, position);
+                runStart = position;
+            }
+            runOfLetters = letter;
+            position += Character.charCount(codePoint);
+        }
+        add(runStart, length);
+        return this;
+    }
+
+    int count() {
+        return count;
+    }
+
+    int start(int token) {
+        return starts[token];
+    }
+
+    int end(int token) {
+        return ends[token];
+    }
+
+    boolean isEmpty(int token) {
+        return starts[token] == ends[token];
+    }
+
+    String token(int token) {
+        return text.subSequence(starts[token], ends[token]).toString();
+    }
+
+    /**
+     * Id of the token in {@code terms} or {@link TermDictionary#NONE}.
+     */
+    int termId(TermDictionary terms, int token) {
+        return terms.id(text, starts[token], ends[token]);
+    }
+
+    int addTerm(TermDictionary terms, int token) {
+        return terms.add(text, starts[token], ends[token]);
+    }
+
+    /**
+     * Tokens from {@code fromToken} (inclusive) to {@code toToken} (exclusive) joined with single spaces.
+     */
+    String phrase(int fromToken, int toToken) {
+        phrase.setLength(0);
+        for (int token = fromToken; token < toToken; token++) {
+            if (token > fromToken) {
+                phrase.append(' ');
+            }
+            phrase.append(text, starts[token], ends[token]);
+        }
+        return phrase.toString();
+    }
+
+    private void reset(CharSequence text) {
+        this.text = text;
+        this.count = 0;
+    }
+
+    private void add(int start, int end) {
+        if (count == starts.length) {
+            starts = Arrays.copyOf(starts, count * 2);
+            ends = Arrays.copyOf(ends, count * 2);
+        }
+        starts[count] = start;
+        ends[count++] = end;
+    }
+}
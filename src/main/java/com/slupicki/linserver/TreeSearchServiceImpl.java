@@ -1,108 +1,348 @@
 package com.slupicki.linserver;
 
-import com.google.common.collect.Maps;
-import com.google.common.collect.Sets;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Service;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
-import java.util.Map;
-import java.util.Set;
-import java.util.stream.Collectors;
 
+/**
+ * Trie of token suffixes of all lines. Tokens are numbered by a {@link TermDictionary}; while the trie is built
+ * children of a node are kept in a small open addressing table keyed by token number, once it is built they are
+ * sorted by token, so children whose tokens start alike are neighbours, and the {@link #MAX_SUGGESTIONS} children
+ * in the most lines are noted in every node for {@link #suggest(String, int)}.
+ */
 @Service
 public class TreeSearchServiceImpl implements SearchService {
 
     private static final Logger log = LoggerFactory.getLogger(TreeSearchServiceImpl.class);
 
-    private final Node root = new Node();
+    static final int MAX_SUGGESTIONS = 10;
+
+    private volatile Generation generation = new Generation(SourceText.current(), new TermDictionary(), new Node(), 1);
 
     @Override
-    public String search(String phrase) {
-        List<String> tokenizedPhrase = tokenizer(phrase.toLowerCase(LOCALE_PL));
-        if (tokenizedPhrase.isEmpty()) {
-            throw new NotFoundException();
-        }
-        Set<Integer> linesWithPhrase = searchPhrase(tokenizedPhrase, root);
-        return linesWithPhrase.stream()
-                .map(SourceText::getLine)
-                .collect(Collectors.joining("\n"));
+    public Matches find(String phrase) {
+        Tokenizer tokenizedPhrase = Tokenizer.get().runs(phrase.toLowerCase(LOCALE_PL));
+        Generation current = generation;
+        Node node = current.walk(tokenizedPhrase, tokenizedPhrase.count());
+        return node == null ? Matches.none(current.text) : Matches.of(current.text, node.lines.cursor());
     }
 
-    private Set<Integer> searchPhrase(List<String> tokenizedPhrase, Node node) {
-        if (tokenizedPhrase.isEmpty()) {
-            return node.lines;
+    /**
+     * At most {@code limit} (up to {@link #MAX_SUGGESTIONS}) phrases starting with {@code prefix} and one token
+     * longer, those found in most lines first. A prefix ending within a word is completed to whole words starting
+     * with its last letters, one ending with other characters is followed by the next word. Phrases are lower case.
+     */
+    List<Suggestion> suggest(String prefix, int limit) {
+        String lowerCasePrefix = prefix.toLowerCase(LOCALE_PL);
+        Tokenizer tokenizedPrefix = Tokenizer.get().runs(lowerCasePrefix);
+        Generation current = generation;
+        int last = tokenizedPrefix.count() - 1;
+        boolean partialWord = !tokenizedPrefix.isEmpty(last)
+                && Character.isLetter(Character.codePointAt(lowerCasePrefix, tokenizedPrefix.start(last)));
+        Node node = current.walk(tokenizedPrefix, partialWord ? last : last + 1);
+        if (node == null) {
+            return List.of();
+        }
+        int from = 0;
+        int to = node.childCount;
+        String completed = lowerCasePrefix;
+        if (partialWord) {
+            String word = tokenizedPrefix.token(last);
+            from = node.childIndex(current.firstRank(word, false));
+            to = node.childIndex(current.firstRank(word, true));
+            completed = lowerCasePrefix.substring(0, tokenizedPrefix.start(last));
         }
-        String token = tokenizedPhrase.get(0);
-        tokenizedPhrase.remove(0);
-        if (!node.children.containsKey(token)) {
-            throw new NotFoundException();
+        int[] top = from == 0 && to == node.childCount ? node.top : node.top(from, to);
+        List<Suggestion> suggestions = new ArrayList<>();
+        for (int idx = 0; idx < top.length && idx < Math.min(limit, MAX_SUGGESTIONS); idx++) {
+            Node child = node.children[top[idx]];
+            suggestions.add(new Suggestion(completed + current.sortedTerms[node.childRanks[top[idx]]], child.lines.size()));
         }
-        return searchPhrase(tokenizedPhrase, node.children.get(token));
+        return suggestions;
     }
 
     @Override
-    public void index() {
-        int lineIdx = 0;
-        for (String line : SourceText.lines()) {
-            List<String> tokenizedLine = tokenizer(line.toLowerCase(LOCALE_PL));
-            indexLine(tokenizedLine, lineIdx++);
-            if (lineIdx % 10 == 0) {
-                log.info("Indexed line {} from {}", lineIdx, SourceText.size());
+    public void index(SourceText.Lines text) {
+        TermDictionary terms = TermDictionary.build("Tree index tokens", text, 0, text.size(), Tokenizer::runs);
+        Node newRoot = ParallelIndexer.build("Tree index", text.size(),
+                (fromLine, toLine) -> indexLines(text, terms, fromLine, toLine), Node::merge);
+        String[] sortedTerms = new String[terms.size()];
+        for (int termId = 0; termId < terms.size(); termId++) {
+            sortedTerms[termId] = terms.term(termId);
+        }
+        Arrays.sort(sortedTerms);
+        int[] ranks = new int[terms.size()];
+        for (int termId = 0; termId < terms.size(); termId++) {
+            ranks[termId] = Arrays.binarySearch(sortedTerms, terms.term(termId));
+        }
+        int nodes = newRoot.freeze(ranks);
+        log.info("Tree index has {} nodes, {} distinct tokens", nodes, terms.size());
+        generation = new Generation(text, terms, sortedTerms, ranks, newRoot, nodes);
+    }
+
+    @Override
+    public long indexEntries() {
+        return generation.nodes;
+    }
+
+    private Node indexLines(SourceText.Lines text, TermDictionary terms, int fromLine, int toLine) {
+        Node shardRoot = new Node();
+        Tokenizer tokenizer = Tokenizer.get();
+        int[] termIds = new int[16];
+        for (int lineIdx = fromLine; lineIdx < toLine; lineIdx++) {
+            tokenizer.runs(text.lowerCase(lineIdx));
+            if (termIds.length < tokenizer.count()) {
+                termIds = new int[tokenizer.count() * 2];
+            }
+            for (int idx = 0; idx < tokenizer.count(); idx++) {
+                termIds[idx] = tokenizer.termId(terms, idx);
+            }
+            for (int idx = 0; idx < tokenizer.count(); idx++) {
+                indexPhrase(shardRoot, termIds, tokenizer.count(), lineIdx, idx);
             }
         }
-        log.info("Indexed line {} from {}", lineIdx, SourceText.size());
+        return shardRoot;
     }
 
-    private void indexLine(List<String> tokenizedLine, int lineIdx) {
-        for (int idx = 0; idx < tokenizedLine.size(); idx++) {
-            indexPhrase(root, tokenizedLine, lineIdx, idx);
+    private void indexPhrase(Node root, int[] termIds, int tokens, int lineIdx, int fromIdx) {
+        Node node = root;
+        for (int idx = fromIdx; idx < tokens; idx++) {
+            Node child = node.child(termIds[idx]);
+            if (child == null) {
+                child = new Node();
+                node.put(termIds[idx], child);
+            }
+            node = child;
+            node.lines.add(lineIdx);
         }
     }
 
-    private void indexPhrase(Node node, List<String> tokenizedLine, int lineIdx, int idx) {
-        if (tokenizedLine.size() <= idx) {
-            return;
+    /**
+     * A phrase one token longer than a prefix and the number of lines containing it.
+     */
+    static final class Suggestion {
+        final String phrase;
+        final int lines;
+
+        Suggestion(String phrase, int lines) {
+            this.phrase = phrase;
+            this.lines = lines;
         }
-        String token = tokenizedLine.get(idx);
-        Node tokenNode = node.children.get(token);
-        if (tokenNode == null) {
-            tokenNode = new Node(token);
-            node.children.put(token, tokenNode);
+
+        @Override
+        public String toString() {
+            return phrase + " (" + lines + ")";
         }
-        tokenNode.lines.add(lineIdx);
-        indexPhrase(tokenNode, tokenizedLine, lineIdx, idx + 1);
     }
 
-    private List<String> tokenizer(String line) {
-        List<String> result = new ArrayList<>();
-        StringBuilder token = new StringBuilder();
-        boolean lastWasLetter = true;
-        for (char c : line.toCharArray()) {
-            if (Character.isLetter(c) != lastWasLetter && token.length() > 0) {
-                result.add(token.toString());
-                token = new StringBuilder();
+    private static final class Generation {
+        private final SourceText.Lines text;
+        private final TermDictionary terms;
+        // tokens in their natural order and the position there of each token id
+        private final String[] sortedTerms;
+        private final int[] ranks;
+        private final Node root;
+        private final int nodes;
+
+        private Generation(SourceText.Lines text, TermDictionary terms, String[] sortedTerms, int[] ranks, Node root,
+                           int nodes) {
+            this.text = text;
+            this.terms = terms;
+            this.sortedTerms = sortedTerms;
+            this.ranks = ranks;
+            this.root = root;
+            this.nodes = nodes;
+        }
+
+        private Generation(SourceText.Lines text, TermDictionary terms, Node root, int nodes) {
+            this(text, terms, new String[0], new int[0], root, nodes);
+        }
+
+        /**
+         * Node of the first {@code tokens} tokens or null when no line contains them.
+         */
+        private Node walk(Tokenizer tokenizer, int tokens) {
+            Node node = root;
+            for (int token = 0; token < tokens && node != null; token++) {
+                int termId = tokenizer.termId(terms, token);
+                node = termId == TermDictionary.NONE ? null : node.rankedChild(ranks[termId]);
+            }
+            return node;
+        }
+
+        /**
+         * Rank of the first token not less than {@code prefix}, or with {@code after} of the first one after all
+         * tokens starting with it.
+         */
+        private int firstRank(String prefix, boolean after) {
+            int from = 0;
+            int to = sortedTerms.length;
+            while (from < to) {
+                int mid = (from + to) >>> 1;
+                String term = sortedTerms[mid];
+                if (term.compareTo(prefix) < 0 || after && term.startsWith(prefix)) {
+                    from = mid + 1;
+                } else {
+                    to = mid;
+                }
             }
-            token.append(c);
-            lastWasLetter = Character.isLetter(c);
+            return from;
         }
-        result.add(token.toString());
-        return result;
     }
 
     private static class Node {
-        final String token;
-        final Set<Integer> lines = Sets.newHashSet();
-        final Map<String, Node> children = Maps.newHashMap();
+        private static final int[] NO_TERMS = new int[0];
+        private static final Node[] NO_CHILDREN = new Node[0];
+        private static final int[] ONLY_CHILD = {0};
 
-        private Node() {
-            this.token = null;
+        final PostingList lines = new PostingList();
+        // while building: term id + 1 of the child in the same slot, 0 for an empty slot
+        private int[] childTerms = NO_TERMS;
+        // once frozen: ranks of tokens of the children, ascending
+        private int[] childRanks = NO_TERMS;
+        private Node[] children = NO_CHILDREN;
+        private int childCount;
+        // once frozen: indexes of at most MAX_SUGGESTIONS children in most lines, in descending order of lines
+        private int[] top = NO_TERMS;
+
+        /**
+         * Child by the rank of its token in a frozen node.
+         */
+        private Node rankedChild(int rank) {
+            int idx = Arrays.binarySearch(childRanks, rank);
+            return idx < 0 ? null : children[idx];
+        }
+
+        /**
+         * Index of the first child with a token of at least {@code rank} in a frozen node.
+         */
+        private int childIndex(int rank) {
+            int idx = Arrays.binarySearch(childRanks, rank);
+            return idx < 0 ? -idx - 1 : idx;
+        }
+
+        /**
+         * Like {@link #top} for children from {@code from} to {@code to} (exclusive).
+         */
+        private int[] top(int from, int to) {
+            int[] top = new int[Math.min(MAX_SUGGESTIONS, to - from)];
+            if (top.length == 0) {
+                return top;
+            }
+            int found = 0;
+            for (int idx = from; idx < to; idx++) {
+                int size = children[idx].lines.size();
+                if (found == top.length && size <= children[top[found - 1]].lines.size()) {
+                    continue;
+                }
+                int position = Math.min(found, top.length - 1);
+                while (position > 0 && size > children[top[position - 1]].lines.size()) {
+                    top[position] = top[position - 1];
+                    position--;
+                }
+                top[position] = idx;
+                found = Math.min(found + 1, top.length);
+            }
+            return top;
+        }
+
+        private Node child(int termId) {
+            return childCount == 0 ? null : children[slot(childTerms, termId)];
+        }
+
+        /**
+         * Adds or replaces the child.
+         */
+        private void put(int termId, Node child) {
+            if ((childCount + 1) * 4 > childTerms.length * 3) {
+                int[] oldTerms = childTerms;
+                Node[] oldChildren = children;
+                childTerms = new int[Math.max(2, oldTerms.length * 2)];
+                children = new Node[childTerms.length];
+                for (int slot = 0; slot < oldTerms.length; slot++) {
+                    if (oldTerms[slot] != 0) {
+                        int newSlot = slot(childTerms, oldTerms[slot] - 1);
+                        childTerms[newSlot] = oldTerms[slot];
+                        children[newSlot] = oldChildren[slot];
+                    }
+                }
+            }
+            int slot = slot(childTerms, termId);
+            if (childTerms[slot] == 0) {
+                childTerms[slot] = termId + 1;
+                childCount++;
+            }
+            children[slot] = child;
+        }
+
+        private static int slot(int[] childTerms, int termId) {
+            int mask = childTerms.length - 1;
+            int hash = termId * 0x9E3779B9;
+            int slot = (hash ^ (hash >>> 16)) & mask;
+            while (childTerms[slot] != 0 && childTerms[slot] != termId + 1) {
+                slot = (slot + 1) & mask;
+            }
+            return slot;
         }
 
-        private Node(String token) {
-            this.token = token;
+        private static Node merge(Node left, Node right) {
+            left.lines.addAll(right.lines);
+            boolean leftIsSmaller = left.childCount < right.childCount;
+            Node smaller = leftIsSmaller ? left : right;
+            Node bigger = leftIsSmaller ? right : left;
+            int[] smallerTerms = smaller.childTerms;
+            Node[] smallerChildren = smaller.children;
+            for (int slot = 0; slot < smallerTerms.length; slot++) {
+                if (smallerTerms[slot] == 0) {
+                    continue;
+                }
+                int termId = smallerTerms[slot] - 1;
+                Node smallerNode = smallerChildren[slot];
+                Node biggerNode = bigger.child(termId);
+                if (biggerNode == null) {
+                    bigger.put(termId, smallerNode);
+                } else {
+                    bigger.put(termId, leftIsSmaller ? merge(smallerNode, biggerNode) : merge(biggerNode, smallerNode));
+                }
+            }
+            left.childTerms = bigger.childTerms;
+            left.children = bigger.children;
+            left.childCount = bigger.childCount;
+            return left;
+        }
+
+        /**
+         * Sorts children of this subtree by rank of their tokens and notes their top children, no child may be added
+         * afterwards. Returns the number of nodes.
+         */
+        private int freeze(int[] ranks) {
+            lines.trim();
+            long[] rankedSlots = new long[childCount];
+            int found = 0;
+            for (int slot = 0; slot < childTerms.length; slot++) {
+                if (childTerms[slot] != 0) {
+                    rankedSlots[found++] = (long) ranks[childTerms[slot] - 1] << 32 | slot;
+                }
+            }
+            Arrays.sort(rankedSlots);
+            Node[] sortedChildren = childCount == 0 ? NO_CHILDREN : new Node[childCount];
+            childRanks = childCount == 0 ? NO_TERMS : new int[childCount];
+            for (int idx = 0; idx < childCount; idx++) {
+                childRanks[idx] = (int) (rankedSlots[idx] >>> 32);
+                sortedChildren[idx] = children[(int) rankedSlots[idx]];
+            }
+            children = sortedChildren;
+            childTerms = NO_TERMS;
+            int nodes = 1;
+            for (Node child : children) {
+                nodes += child.freeze(ranks);
+            }
+            top = childCount == 0 ? NO_TERMS : childCount == 1 ? ONLY_CHILD : top(0, childCount);
+            return nodes;
         }
     }
 }
@@ -4,6 +4,9 @@ import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
+import java.util.Arrays;
+import java.util.stream.IntStream;
+
 import static org.assertj.core.api.Assertions.assertThat;
 
 abstract class AbstractSearchServiceTest {
@@ -71,4 +74,44 @@ abstract class AbstractSearchServiceTest {
                 .containsExactlyInAnyOrder("the", "fox jumps over the");
 
     }
-}
\ No newline at end of file
+
+    @Test
+    void shouldFindPhraseInLinesIndexedInManyShards() {
+        String[] lines = manyShardLines();
+        SourceText.setLines(lines);
+        searchService.index();
+        assertThat(searchService.search("fox jumps").split("\n"))
+                .containsExactlyInAnyOrder(Arrays.stream(lines).filter(line -> line.startsWith("fox")).toArray(String[]::new));
+        assertThat(searchService.search("dog 2047")).isEqualTo("lazy dog 2047");
+    }
+
+    @Test
+    void shouldReturnFirstMatchingLinesUpToLimit() {
+        SourceText.setLines(manyShardLines());
+        searchService.index();
+        assertThat(searchService.search("fox jumps", 3)).isEqualTo("fox jumps 0\nfox jumps 3\nfox jumps 6");
+        assertThat(searchService.search("dog 2047", 3)).isEqualTo("lazy dog 2047");
+        Assertions.assertThrows(NotFoundException.class, () -> searchService.search("fox dog", 3));
+    }
+
+    @Test
+    void shouldSkipMatchesBeforeRange() {
+        SourceText.setLines(manyShardLines());
+        searchService.index();
+        Matches matches = Matches.within(searchService.find("fox jumps"), 100, 110);
+        assertThat(matches.next()).isEqualTo(102);
+        assertThat(matches.advance(104)).isEqualTo(105);
+        assertThat(matches.advance(105)).isEqualTo(108);
+        assertThat(matches.next()).isEqualTo(Matches.NO_MORE);
+        assertThat(Matches.within(searchService.find("dog 2047"), 0, 2047).next()).isEqualTo(Matches.NO_MORE);
+    }
+
+    /**
+     * Lines enough for many index shards, every third one with "fox jumps".
+     */
+    static String[] manyShardLines() {
+        return IntStream.range(0, ParallelIndexer.MIN_LINES_PER_SHARD * 8)
+                .mapToObj(i -> i % 3 == 0 ? "fox jumps " + i : "lazy dog " + i)
+                .toArray(String[]::new);
+    }
+}
@@ -0,0 +1,89 @@
+package com.slupicki.linserver;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.servlet.MockMvc;
+
+import java.nio.charset.StandardCharsets;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@SpringBootTest
+@AutoConfigureMockMvc
+class BatchSearchControllerTest {
+
+    @Autowired
+    MockMvc mockMvc;
+
+    @Autowired
+    SearchService searchService;
+
+    @BeforeEach
+    void setUp() {
+        SourceText.setLines(new String[]{"the", "quick brown", "fox jumps over the", "lazy dog"});
+        searchService.index();
+    }
+
+    @Test
+    void shouldSearchPhrasesOfJsonArray() throws Exception {
+        mockMvc.perform(post("/search/batch").contentType(MediaType.APPLICATION_JSON)
+                        .content("[\"the\", {\"phrase\": \"lazy dog\"}, \"cat\", \"THE\"]"))
+                .andExpect(status().isOk())
+                .andExpect(content().contentTypeCompatibleWith(MediaType.APPLICATION_JSON))
+                .andExpect(content().json("[{\"phrase\":\"the\",\"lines\":[\"the\",\"fox jumps over the\"]},"
+                        + "{\"phrase\":\"lazy dog\",\"lines\":[\"lazy dog\"]},{\"phrase\":\"cat\",\"lines\":[]},"
+                        + "{\"phrase\":\"THE\",\"lines\":[\"the\",\"fox jumps over the\"]}]", true));
+    }
+
+    @Test
+    void shouldAnswerNdjsonWithOneLinePerPhrase() throws Exception {
+        mockMvc.perform(post("/search/batch").param("limit", "1").contentType(MediaType.APPLICATION_NDJSON)
+                        .content("{\"id\": 1, \"phrase\": \"the\"}\n\"quick\"\n"))
+                .andExpect(content().contentTypeCompatibleWith(MediaType.APPLICATION_NDJSON))
+                .andExpect(content().string("{\"phrase\":\"the\",\"lines\":[\"the\"]}\n"
+                        + "{\"phrase\":\"quick\",\"lines\":[\"quick brown\"]}\n"));
+        mockMvc.perform(post("/search/batch").param("count", "true").contentType(MediaType.APPLICATION_NDJSON)
+                        .content("\"the\"\n\"cat\""))
+                .andExpect(content().string("{\"phrase\":\"the\",\"count\":2}\n{\"phrase\":\"cat\",\"count\":0}\n"));
+    }
+
+    @Test
+    void shouldLimitLinesOfEachPhraseByDefault() throws Exception {
+        SourceText.setLines(IntStream.range(0, BatchSearchController.DEFAULT_LIMIT + 10).mapToObj(i -> "fox " + i).toArray(String[]::new));
+        searchService.index();
+        String manyPhrases = IntStream.range(0, BatchSearchController.MAX_IN_FLIGHT * 3)
+                .mapToObj(i -> i % 2 == 0 ? "\"fox\"" : "\"FOX " + (100 + i % 10) + "\"").collect(Collectors.joining("\n"));
+        String[] results = mockMvc.perform(post("/search/batch").contentType(MediaType.APPLICATION_NDJSON).content(manyPhrases))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getContentAsString(StandardCharsets.UTF_8).split("\n");
+        assertThat(results).hasSize(BatchSearchController.MAX_IN_FLIGHT * 3);
+        assertThat(results[0]).startsWith("{\"phrase\":\"fox\",\"lines\":[\"fox 0\",").endsWith(",\"fox 99\"]}");
+        assertThat(results[1]).isEqualTo("{\"phrase\":\"FOX 101\",\"lines\":[\"fox 101\"]}");
+        assertThat(results[results.length - 2]).isEqualTo(results[0]);
+    }
+
+    @Test
+    void shouldRejectMalformedBatch() throws Exception {
+        mockMvc.perform(post("/search/batch").contentType(MediaType.APPLICATION_JSON).content("[1]"))
+                .andExpect(status().isBadRequest());
+        mockMvc.perform(post("/search/batch").contentType(MediaType.APPLICATION_JSON).content("[\"the\""))
+                .andExpect(status().isBadRequest());
+        mockMvc.perform(post("/search/batch").param("limit", "0").contentType(MediaType.APPLICATION_JSON).content("[]"))
+                .andExpect(status().isBadRequest());
+        mockMvc.perform(post("/search/batch").param("limit", String.valueOf(BatchSearchController.MAX_LIMIT + 1))
+                        .contentType(MediaType.APPLICATION_JSON).content("[]"))
+                .andExpect(status().isBadRequest());
+        mockMvc.perform(post("/search/batch").contentType(MediaType.TEXT_PLAIN).content("the"))
+                .andExpect(status().isUnsupportedMediaType());
+    }
+}
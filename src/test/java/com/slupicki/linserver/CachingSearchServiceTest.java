@@ -0,0 +1,56 @@
+package com.slupicki.linserver;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class CachingSearchServiceTest extends AbstractSearchServiceTest {
+
+    private final AtomicInteger delegatedSearches = new AtomicInteger();
+
+    @Override
+    SearchService getServiceUnderTest() {
+        IndexSearchServiceImpl delegate = new IndexSearchServiceImpl() {
+            @Override
+            public Matches find(String phrase) {
+                delegatedSearches.incrementAndGet();
+                return super.find(phrase);
+            }
+        };
+        return new CachingSearchService(delegate);
+    }
+
+    @Test
+    void shouldAnswerRepeatedSearchesFromCache() {
+        searchService.index();
+        assertThat(searchService.search("fox jumps").split("\n")).containsExactly("fox jumps over the", "fox jumps high");
+        assertThat(searchService.search("Fox Jumps").split("\n")).containsExactly("fox jumps over the", "fox jumps high");
+        Assertions.assertThrows(NotFoundException.class, () -> searchService.search("jumps fox"));
+        Assertions.assertThrows(NotFoundException.class, () -> searchService.search("jumps fox"));
+        assertThat(delegatedSearches).hasValue(2);
+        assertThat(((CachingSearchService) searchService).stats().hitCount()).isEqualTo(2);
+        assertThat(((CachingSearchService) searchService).stats().missCount()).isEqualTo(2);
+    }
+
+    @Test
+    void shouldForgetResultsAfterIndexing() {
+        searchService.index();
+        assertThat(searchService.search("lazy dog")).isEqualTo("lazy dog");
+        SourceText.setLines(new String[]{"lazy dog sleeps", "the"});
+        searchService.index();
+        assertThat(searchService.search("lazy dog")).isEqualTo("lazy dog sleeps");
+        assertThat(delegatedSearches).hasValue(2);
+    }
+
+    @Test
+    void shouldNotCacheWhenDisabled() {
+        ((CachingSearchService) searchService).setMaximumWeight(0);
+        searchService.index();
+        searchService.search("lazy dog");
+        searchService.search("lazy dog");
+        assertThat(delegatedSearches).hasValue(2);
+    }
+}
@@ -0,0 +1,189 @@
+package com.slupicki.linserver;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class IndexLoaderTest {
+
+    @TempDir
+    Path tempDir;
+
+    private final IndexSearchServiceImpl searchService = new IndexSearchServiceImpl();
+    private final IndexLoader indexLoader = new IndexLoader(searchService, new CachingSearchService(searchService));
+
+    @AfterEach
+    void tearDown() throws IOException {
+        indexLoader.shutdown();
+    }
+
+    @Test
+    void shouldServeNewVersionAfterReload() throws Exception {
+        Path file = Files.writeString(tempDir.resolve("text.txt"), "the\nquick brown");
+        indexLoader.configure(file.toString(), false, null, false);
+        assertThat(indexLoader.load()).isEqualTo(2);
+        assertThat(searchService.search("quick brown")).isEqualTo("quick brown");
+
+        Files.writeString(file, "the\nlazy dog\nquick brown fox");
+        assertThat(indexLoader.reload().get(10, TimeUnit.SECONDS)).isEqualTo(3);
+        assertThat(searchService.search("quick brown")).isEqualTo("quick brown fox");
+        assertThat(searchService.getLine(2)).isEqualTo("lazy dog");
+        Assertions.assertThrows(NotFoundException.class, () -> searchService.search("quick brown fox jumps"));
+    }
+
+    @Test
+    void shouldAnswerSearchesConsistentlyDuringReloads() throws Exception {
+        Path file = tempDir.resolve("text.txt");
+        Files.writeString(file, "fox jumps\nlazy dog");
+        indexLoader.configure(file.toString(), true, null, false);
+        indexLoader.load();
+        AtomicBoolean running = new AtomicBoolean(true);
+        ExecutorService searcher = Executors.newSingleThreadExecutor();
+        Future<?> searches = searcher.submit(() -> {
+            while (running.get()) {
+                assertThat(searchService.search("fox jumps")).isIn("fox jumps", "fox jumps high");
+            }
+        });
+        for (int i = 0; i < 20; i++) {
+            Path next = Files.writeString(tempDir.resolve("next.txt"), i % 2 == 0 ? "lazy dog\nfox jumps high" : "fox jumps\nlazy dog");
+            Files.move(next, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            indexLoader.reload().get(10, TimeUnit.SECONDS);
+        }
+        running.set(false);
+        searches.get(10, TimeUnit.SECONDS);
+        searcher.shutdown();
+        assertThat(searchService.search("fox jumps")).isEqualTo("fox jumps");
+    }
+
+    @Test
+    void shouldIndexOnlyAppendedLinesInTailMode() throws Exception {
+        Path file = Files.writeString(tempDir.resolve("text.log"), "the\nquick brown\nfox");
+        indexLoader.configure(file.toString(), false, null, true);
+        assertThat(indexLoader.load()).isEqualTo(2);
+        Assertions.assertThrows(NotFoundException.class, () -> searchService.search("fox"));
+
+        Files.writeString(file, " jumps\r", StandardOpenOption.APPEND);
+        assertThat(indexLoader.append()).isEqualTo(1);
+        Files.writeString(file, "\nlazy dog\nfox jumps high\n", StandardOpenOption.APPEND);
+        assertThat(indexLoader.append()).isEqualTo(2);
+        assertThat(indexLoader.append()).isZero();
+        assertThat(searchService.search("fox jumps").split("\n")).containsExactly("fox jumps", "fox jumps high");
+        assertThat(searchService.search("quick brown")).isEqualTo("quick brown");
+        assertThat(searchService.getLine(3)).isEqualTo("fox jumps");
+        assertThat(searchService.getLine(4)).isEqualTo("lazy dog");
+
+        Path replacement = Files.writeString(tempDir.resolve("rotated.log"), "lazy dog\n");
+        Files.move(replacement, file, StandardCopyOption.REPLACE_EXISTING);
+        assertThat(indexLoader.append()).isEqualTo(1);
+        Assertions.assertThrows(NotFoundException.class, () -> searchService.search("fox jumps"));
+    }
+
+    @Test
+    void shouldAddAppendedLinesToIndexInPlace() throws Exception {
+        Path file = Files.writeString(tempDir.resolve("text.log"), "the\nquick brown\n");
+        indexLoader.configure(file.toString(), false, null, true);
+        indexLoader.load();
+        PhraseIndex index = searchService.getIndex();
+        TermDictionary terms = searchService.getTerms();
+        long quickBrown = PhraseIndex.key(PhraseIndex.key(PhraseIndex.NO_WORDS, terms.id("quick", 0, 5)), terms.id("brown", 0, 5));
+        PostingList quickBrownLines = index.get(quickBrown);
+
+        Files.writeString(file, "quick brown fox\n", StandardOpenOption.APPEND);
+        assertThat(indexLoader.append()).isEqualTo(1);
+        assertThat(searchService.getIndex()).isSameAs(index);
+        assertThat(searchService.getTerms()).isSameAs(terms);
+        assertThat(index.get(quickBrown)).isSameAs(quickBrownLines);
+        assertThat(quickBrownLines.toArray()).containsExactly(1, 2);
+        assertThat(terms.id("fox", 0, 3)).isNotEqualTo(TermDictionary.NONE);
+        assertThat(searchService.search("brown fox")).isEqualTo("quick brown fox");
+
+        Files.writeString(file, "the fox\n", StandardOpenOption.APPEND);
+        assertThat(indexLoader.append()).isEqualTo(1);
+        assertThat(searchService.search("the fox")).isEqualTo("the fox");
+        assertThat(searchService.search("fox").split("\n")).containsExactly("quick brown fox", "the fox");
+    }
+
+    @Test
+    void shouldAnswerSearchesConsistentlyDuringAppends() throws Exception {
+        Path file = Files.writeString(tempDir.resolve("text.log"), "fox jumps high\n");
+        indexLoader.configure(file.toString(), false, null, true);
+        indexLoader.load();
+        AtomicBoolean running = new AtomicBoolean(true);
+        ExecutorService searcher = Executors.newSingleThreadExecutor();
+        Future<Integer> searches = searcher.submit(() -> {
+            int found = 0;
+            while (running.get()) {
+                // chunks of at most three words, so lists of all of them are intersected using their skips
+                Matches matches = searchService.find("fox jumps over the lazy dog");
+                int matched = 0;
+                for (int line = matches.next(); line != Matches.NO_MORE; line = matches.next()) {
+                    assertThat(matches.text().get(line)).isEqualTo("fox jumps over the lazy dog " + matched++);
+                }
+                assertThat(matched).isGreaterThanOrEqualTo(found);
+                found = matched;
+            }
+            return found;
+        });
+        int appended = 0;
+        for (int batch = 0; batch < 200; batch++) {
+            StringBuilder lines = new StringBuilder();
+            for (int line = 0; line < 5; line++) {
+                lines.append("lazy dog jumps\nfox jumps over the lazy dog ").append(appended++).append('\n');
+            }
+            Files.writeString(file, lines, StandardOpenOption.APPEND);
+            indexLoader.append();
+        }
+        running.set(false);
+        assertThat(searches.get(10, TimeUnit.SECONDS)).isLessThanOrEqualTo(appended);
+        searcher.shutdown();
+        assertThat(searchService.find("fox jumps over the lazy dog").next()).isEqualTo(2);
+        assertThat(searchService.search("fox jumps over the lazy dog").split("\n")).hasSize(appended);
+    }
+
+    @Test
+    void shouldLoadOnlyLinesOfItsShard() throws Exception {
+        Path file = Files.writeString(tempDir.resolve("text.txt"), "the\nquick brown\nfox jumps over the\nlazy dog\nfox jumps high");
+        for (boolean mapped : new boolean[]{false, true}) {
+            indexLoader.configure(file.toString(), mapped, null, false);
+            indexLoader.configureShard(2, 2);
+            assertThat(indexLoader.load()).isEqualTo(3);
+            assertThat(indexLoader.getFirstLine()).isEqualTo(2);
+            assertThat(searchService.getLine(1)).isEqualTo("fox jumps over the");
+            assertThat(searchService.search("fox jumps").split("\n")).containsExactly("fox jumps over the", "fox jumps high");
+            Assertions.assertThrows(NotFoundException.class, () -> searchService.search("quick brown"));
+        }
+    }
+
+    @Test
+    void shouldLoadDirectoryAsCorpusOfDocuments() throws Exception {
+        Path directory = Files.createDirectory(tempDir.resolve("texts"));
+        Files.writeString(directory.resolve("b.txt"), "lazy dog\nfox jumps high");
+        Files.writeString(directory.resolve("a.txt"), "the\nquick brown\nfox jumps over the");
+        for (boolean mapped : new boolean[]{false, true}) {
+            indexLoader.configure(directory.toString(), mapped, null, false);
+            assertThat(indexLoader.load()).isEqualTo(5);
+            Corpus corpus = (Corpus) SourceText.current();
+            assertThat(corpus.documentCount()).isEqualTo(2);
+            assertThat(corpus.name(1)).isEqualTo("b.txt");
+            assertThat(corpus.get(corpus.line("b.txt", 2))).isEqualTo("fox jumps high");
+            assertThat(corpus.documentOf(3)).isEqualTo(1);
+            assertThat(searchService.search("fox jumps").split("\n")).containsExactly("fox jumps over the", "fox jumps high");
+            Assertions.assertThrows(NotFoundException.class, () -> corpus.line("b.txt", 3));
+            Assertions.assertThrows(NotFoundException.class, () -> corpus.line("c.txt", 1));
+        }
+    }
+}
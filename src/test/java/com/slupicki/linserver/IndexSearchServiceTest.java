@@ -2,6 +2,12 @@ package com.slupicki.linserver;
 
 import org.junit.jupiter.api.Test;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.IntStream;
+
 import static org.assertj.core.api.Assertions.assertThat;
 
 public class IndexSearchServiceTest extends AbstractSearchServiceTest {
@@ -18,4 +24,43 @@ public class IndexSearchServiceTest extends AbstractSearchServiceTest {
         searchService.index();
         assertThat(searchService.search("fox jumps over")).isEqualTo("fox jumps over the");
     }
+
+    @Test
+    void shouldFindSameLinesWhenOnlyPhrasesAfterFrequentPrefixesFitInBudget() {
+        Random random = new Random(42);
+        String[] vocabulary = {"the", "fox", "dog", "jumps", "over", "lazy", "quick", "brown", "high", "low", "cat", "and"};
+        String[] lines = IntStream.range(0, 2000)
+                .mapToObj(line -> String.join(" ", random.ints(2 + random.nextInt(8), 0, vocabulary.length)
+                        .map(word -> Math.min(word, random.nextInt(vocabulary.length)))
+                        .mapToObj(word -> vocabulary[word]).toArray(String[]::new)))
+                .toArray(String[]::new);
+        SourceText.setLines(lines);
+        IndexSearchServiceImpl full = new IndexSearchServiceImpl();
+        full.index();
+        IndexSearchServiceImpl budgeted = new IndexSearchServiceImpl();
+        budgeted.setMemoryBudget(IndexSearchServiceImpl.estimatedBytes(full.getIndex()) / 10);
+        budgeted.index();
+        assertThat(IndexSearchServiceImpl.estimatedBytes(budgeted.getIndex())).isLessThanOrEqualTo(budgeted.getMemoryBudget());
+        assertThat(budgeted.getIndexedPhraseLength()).isGreaterThan(1);
+        List<String> phrases = new ArrayList<>(List.of("fox cat fox cat fox", "the the the", "lazy lazy dog"));
+        for (String line : Arrays.copyOf(lines, 200)) {
+            String[] words = line.split(" ");
+            for (int from = 0; from < words.length; from++) {
+                for (int to = from + 1; to <= words.length; to++) {
+                    phrases.add(String.join(" ", Arrays.copyOfRange(words, from, to)));
+                }
+            }
+        }
+        for (String phrase : phrases) {
+            assertThat(lines(budgeted.find(phrase))).as(phrase).isEqualTo(lines(full.find(phrase)));
+        }
+    }
+
+    private static List<Integer> lines(Matches matches) {
+        List<Integer> lines = new ArrayList<>();
+        for (int line = matches.next(); line != Matches.NO_MORE; line = matches.next()) {
+            lines.add(line);
+        }
+        return lines;
+    }
 }
@@ -0,0 +1,11 @@
+package com.slupicki.linserver;
+
+class IndexSearchServiceWithinBudgetTest extends AbstractSearchServiceTest {
+
+    @Override
+    SearchService getServiceUnderTest() {
+        IndexSearchServiceImpl searchService = new IndexSearchServiceImpl();
+        searchService.setMemoryBudget(2_000);
+        return searchService;
+    }
+}
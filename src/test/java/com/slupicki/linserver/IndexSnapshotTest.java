@@ -0,0 +1,58 @@
+package com.slupicki.linserver;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class IndexSnapshotTest {
+
+    @TempDir
+    Path tempDir;
+
+    @BeforeEach
+    void setUp() {
+        SourceText.setLines(new String[]{"the", "quick brown", "fox jumps over the", "lazy dog", "fox jumps high"});
+    }
+
+    @Test
+    void shouldLoadSavedIndex() throws IOException {
+        IndexSearchServiceImpl indexed = new IndexSearchServiceImpl();
+        indexed.setMaxPhraseLengthToIndex(2);
+        indexed.index();
+        Path snapshot = tempDir.resolve("index.snapshot");
+        IndexSnapshot.save(snapshot, "key", indexed);
+
+        IndexSearchServiceImpl loaded = new IndexSearchServiceImpl();
+        assertThat(IndexSnapshot.load(snapshot, "key", SourceText.current(), loaded)).isTrue();
+        assertThat(loaded.getIndexedPhraseLength()).isEqualTo(2);
+        assertThat(loaded.getIndex()).isEqualTo(indexed.getIndex());
+        assertThat(loaded.search("fox jumps over")).isEqualTo("fox jumps over the");
+    }
+
+    @Test
+    void shouldIgnoreSnapshotWithDifferentKey() throws IOException {
+        IndexSearchServiceImpl indexed = new IndexSearchServiceImpl();
+        indexed.index();
+        Path snapshot = tempDir.resolve("index.snapshot");
+        IndexSnapshot.save(snapshot, "key", indexed);
+
+        assertThat(IndexSnapshot.load(snapshot, "other key", SourceText.current(), new IndexSearchServiceImpl())).isFalse();
+        assertThat(IndexSnapshot.load(tempDir.resolve("missing"), "key", SourceText.current(), new IndexSearchServiceImpl())).isFalse();
+    }
+
+    @Test
+    void shouldBuildKeyFromLinesAndLimit() {
+        SourceText.Lines first = SourceText.of("the", "quick brown");
+        SourceText.Lines second = SourceText.of("the", "quick brown");
+        SourceText.Lines third = SourceText.of("the", "quick brown fox");
+        assertThat(IndexSnapshot.key(first, 2)).isNotEqualTo(IndexSnapshot.key(SourceText.of("the\nquick", " brown"), 2));
+        assertThat(IndexSnapshot.key(first, 2)).isEqualTo(IndexSnapshot.key(second, 2));
+        assertThat(IndexSnapshot.key(first, 2)).isNotEqualTo(IndexSnapshot.key(first, 3));
+        assertThat(IndexSnapshot.key(first, 2)).isNotEqualTo(IndexSnapshot.key(third, 2));
+    }
+}
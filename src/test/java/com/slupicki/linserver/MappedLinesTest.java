@@ -0,0 +1,86 @@
+package com.slupicki.linserver;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class MappedLinesTest {
+
+    private static final String TEXT = "the\r\nquick brown\rfox jumps over the\n\nzażółć gęślą jaźń\r\n\r\rlazy dog";
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void shouldSplitLinesLikeFilesLines() throws IOException {
+        Path file = write(TEXT);
+        assertThat(readAll(MappedLines.map(file))).containsExactlyElementsOf(Files.readAllLines(file));
+    }
+
+    @Test
+    void shouldSplitLinesLikeFilesLinesWhenFileEndsWithNewLine() throws IOException {
+        Path file = write(TEXT + "\r\n");
+        assertThat(readAll(MappedLines.map(file))).containsExactlyElementsOf(Files.readAllLines(file));
+    }
+
+    @Test
+    void shouldReadLinesAcrossChunks() throws IOException {
+        Path file = write(TEXT + "\n" + TEXT);
+        for (int chunkSize = 30; chunkSize < 60; chunkSize++) {
+            assertThat(readAll(MappedLines.map(file, chunkSize))).containsExactlyElementsOf(Files.readAllLines(file));
+        }
+    }
+
+    @Test
+    void shouldHandleEmptyFile() throws IOException {
+        assertThat(MappedLines.map(write("")).size()).isZero();
+    }
+
+    @Test
+    void shouldKeepOffsetsOfManyLines() throws IOException {
+        String text = IntStream.range(0, 1000).mapToObj(i -> "line " + i).collect(Collectors.joining("\n"));
+        MappedLines lines = MappedLines.map(write(text));
+        assertThat(lines.size()).isEqualTo(1000);
+        assertThat(lines.get(999)).isEqualTo("line 999");
+        assertThat(lines.sizeInBytes()).isEqualTo(text.length());
+    }
+
+    private Path write(String text) throws IOException {
+        return Files.write(tempDir.resolve("text.txt"), text.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static List<String> readAll(MappedLines lines) {
+        return IntStream.range(0, lines.size()).mapToObj(lines::get).collect(Collectors.toList());
+    }
+
+    @Test
+    void shouldAppendOnlyCompleteLines() throws IOException {
+        Path file = write("the\r");
+        for (int chunkSize : new int[]{MappedLines.MAX_CHUNK_SIZE, 20}) {
+            Files.writeString(file, "the\r");
+            MappedLines lines = MappedLines.mapCompleteLines(file, chunkSize);
+            assertThat(readAll(lines)).containsExactly("the");
+            Files.writeString(file, "\nquick brown\nfox", StandardOpenOption.APPEND);
+            MappedLines appended = lines.append();
+            assertThat(readAll(appended)).containsExactly("the", "quick brown");
+            Files.writeString(file, " jumps over the\nlazy dog\n", StandardOpenOption.APPEND);
+            MappedLines appendedAgain = appended.append();
+            assertThat(readAll(appendedAgain)).containsExactly("the", "quick brown", "fox jumps over the", "lazy dog");
+            assertThat(appendedAgain.sizeInBytes()).isEqualTo(Files.size(file));
+            assertThat(readAll(lines)).containsExactly("the");
+            assertThat(readAll(appended)).containsExactly("the", "quick brown");
+            Assertions.assertThrows(IllegalStateException.class, lines::append);
+        }
+    }
+}
@@ -0,0 +1,35 @@
+package com.slupicki.linserver;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class PhraseFilterTest {
+
+    @Test
+    void shouldKeepAllIndexedPhrasesAndRejectMostOthers() {
+        PhraseIndex index = new PhraseIndex();
+        for (int termId = 0; termId < 100_000; termId++) {
+            index.lines(PhraseIndex.key(PhraseIndex.NO_WORDS, termId)).add(termId);
+        }
+        PhraseFilter filter = PhraseFilter.of(index);
+        assertThat(IntStream.range(0, 100_000)).allMatch(termId -> filter.mightContain(PhraseIndex.key(PhraseIndex.NO_WORDS, termId)));
+        long falsePositives = IntStream.range(100_000, 200_000)
+                .filter(termId -> filter.mightContain(PhraseIndex.key(PhraseIndex.NO_WORDS, termId))).count();
+        assertThat(falsePositives).isLessThan(1000);
+        assertThat(filter.sizeInBytes()).isEqualTo(100_000L * PhraseFilter.BITS_PER_KEY / 8);
+    }
+
+    @Test
+    void shouldAcceptKeysAddedUpToItsCapacity() {
+        PhraseIndex index = new PhraseIndex();
+        index.lines(PhraseIndex.key(PhraseIndex.NO_WORDS, 0)).add(0);
+        PhraseFilter filter = PhraseFilter.of(index, 1000);
+        IntStream.range(1, 1000).forEach(termId -> filter.add(PhraseIndex.key(PhraseIndex.NO_WORDS, termId)));
+        assertThat(filter.capacity()).isEqualTo(1000);
+        assertThat(IntStream.range(0, 1000)).allMatch(termId -> filter.mightContain(PhraseIndex.key(PhraseIndex.NO_WORDS, termId)));
+        assertThat(filter.sizeInBytes()).isEqualTo(1000L * PhraseFilter.BITS_PER_KEY / 8);
+    }
+}
@@ -0,0 +1,43 @@
+package com.slupicki.linserver;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class PhraseIndexTest {
+
+    @Test
+    void shouldKeyPhrasesByOrderOfWords() {
+        long fox = PhraseIndex.key(PhraseIndex.NO_WORDS, 0);
+        long jumps = PhraseIndex.key(PhraseIndex.NO_WORDS, 1);
+        assertThat(fox).isNotEqualTo(jumps);
+        assertThat(PhraseIndex.key(fox, 1)).isNotEqualTo(PhraseIndex.key(jumps, 0));
+        assertThat(PhraseIndex.key(fox, 1)).isEqualTo(PhraseIndex.key(PhraseIndex.key(PhraseIndex.NO_WORDS, 0), 1));
+    }
+
+    @Test
+    void shouldMergeShardsAndKeepLinesInOrder() throws IOException {
+        PhraseIndex left = new PhraseIndex();
+        PhraseIndex right = new PhraseIndex();
+        for (int termId = 0; termId < 1000; termId++) {
+            left.lines(PhraseIndex.key(PhraseIndex.NO_WORDS, termId)).add(termId);
+        }
+        right.lines(PhraseIndex.key(PhraseIndex.NO_WORDS, 7)).add(2000);
+        right.lines(PhraseIndex.key(PhraseIndex.NO_WORDS, 5000)).add(2001);
+        PhraseIndex merged = PhraseIndex.merge(left, right);
+        assertThat(merged.size()).isEqualTo(1001);
+        assertThat(merged.get(PhraseIndex.key(PhraseIndex.NO_WORDS, 7)).toArray()).containsExactly(7, 2000);
+        assertThat(merged.get(PhraseIndex.key(PhraseIndex.NO_WORDS, 5000)).toArray()).containsExactly(2001);
+        assertThat(merged.get(PhraseIndex.key(PhraseIndex.NO_WORDS, 5001))).isNull();
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        merged.write(new DataOutputStream(bytes));
+        assertThat(PhraseIndex.read(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())))).isEqualTo(merged);
+    }
+}
@@ -0,0 +1,28 @@
+package com.slupicki.linserver;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class PositionalIndexSearchServiceTest extends AbstractSearchServiceTest {
+
+    @Override
+    SearchService getServiceUnderTest() {
+        return new PositionalIndexSearchServiceImpl();
+    }
+
+    @Test
+    void shouldFindPhraseOfAnyLength() {
+        searchService.index();
+        assertThat(searchService.search("fox jumps over the")).isEqualTo("fox jumps over the");
+        assertThat(searchService.search("fox jumps").split("\n"))
+                .containsExactly("fox jumps over the", "fox jumps high");
+    }
+
+    @Test
+    void shouldNotFindWordsInWrongOrder() {
+        searchService.index();
+        Assertions.assertThrows(NotFoundException.class, () -> searchService.search("jumps fox"));
+    }
+}
@@ -0,0 +1,63 @@
+package com.slupicki.linserver;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class PostingListTest {
+
+    @Test
+    void shouldKeepValuesInOrderWithoutDuplicates() {
+        PostingList postingList = PostingList.of(0, 3, 3, 200, 70_000, Integer.MAX_VALUE - 1);
+        assertThat(postingList.size()).isEqualTo(5);
+        assertThat(postingList.toArray()).containsExactly(0, 3, 200, 70_000, Integer.MAX_VALUE - 1);
+        assertThat(postingList.stream().toArray()).containsExactly(0, 3, 200, 70_000, Integer.MAX_VALUE - 1);
+    }
+
+    @Test
+    void shouldRejectValuesOutOfOrder() {
+        PostingList postingList = PostingList.of(5);
+        Assertions.assertThrows(IllegalArgumentException.class, () -> postingList.add(4));
+    }
+
+    @Test
+    void shouldAdvanceAcrossSkipBlocks() {
+        PostingList postingList = PostingList.of(IntStream.range(0, 10_000).map(i -> i * 3).toArray());
+        PostingList.Cursor cursor = postingList.cursor();
+        assertThat(cursor.advance(0)).isEqualTo(0);
+        assertThat(cursor.advance(4)).isEqualTo(6);
+        assertThat(cursor.advance(6)).isEqualTo(6);
+        assertThat(cursor.advance(192)).isEqualTo(192);
+        assertThat(cursor.next()).isEqualTo(195);
+        assertThat(cursor.advance(20_000)).isEqualTo(20_001);
+        assertThat(cursor.index()).isEqualTo(6667);
+        assertThat(cursor.advance(29_997)).isEqualTo(29_997);
+        assertThat(cursor.advance(29_998)).isEqualTo(PostingList.NO_MORE);
+    }
+
+    @Test
+    void shouldIntersect() {
+        PostingList multiplesOf2 = PostingList.of(IntStream.range(0, 5_000).map(i -> i * 2).toArray());
+        PostingList multiplesOf3 = PostingList.of(IntStream.range(0, 5_000).map(i -> i * 3).toArray());
+        assertThat(PostingList.intersect(multiplesOf2, multiplesOf3).toArray())
+                .containsExactly(IntStream.range(0, 1667).map(i -> i * 6).toArray());
+        assertThat(PostingList.intersect(multiplesOf2, PostingList.of(1, 7, 9998, 10_000)).toArray())
+                .containsExactly(9998);
+    }
+
+    @Test
+    void shouldAdvanceAllCursorsToCommonValue() {
+        PostingList multiplesOf2 = PostingList.of(IntStream.range(0, 5_000).map(i -> i * 2).toArray());
+        PostingList multiplesOf3 = PostingList.of(IntStream.range(0, 5_000).map(i -> i * 3).toArray());
+        PostingList multiplesOf5 = PostingList.of(IntStream.range(0, 5_000).map(i -> i * 5).toArray());
+        PostingList.Cursor[] cursors = {multiplesOf5.cursor(), multiplesOf3.cursor(), multiplesOf2.cursor()};
+        assertThat(PostingList.advanceAll(cursors, 0)).isEqualTo(0);
+        assertThat(PostingList.advanceAll(cursors, 1)).isEqualTo(30);
+        assertThat(cursors[2].value()).isEqualTo(30);
+        assertThat(PostingList.advanceAll(cursors, 9_961)).isEqualTo(9_990);
+        assertThat(PostingList.advanceAll(cursors, 9_991)).isEqualTo(PostingList.NO_MORE);
+    }
+}
@@ -0,0 +1,27 @@
+package com.slupicki.linserver;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class RadixTreeSearchServiceTest extends AbstractSearchServiceTest {
+
+    @Override
+    SearchService getServiceUnderTest() {
+        return new RadixTreeSearchServiceImpl();
+    }
+
+    @Test
+    void shouldFindPhraseEndingInsideCompressedEdge() {
+        SourceText.setLines(new String[]{"fox jumps over the lazy dog", "fox jumps high", "over the lazy fox"});
+        searchService.index();
+        assertThat(searchService.search("jumps over the")).isEqualTo("fox jumps over the lazy dog");
+        Assertions.assertThrows(NotFoundException.class, () -> searchService.search("jumps over the la"));
+        assertThat(searchService.search("fox jumps").split("\n")).containsExactly("fox jumps over the lazy dog", "fox jumps high");
+        assertThat(searchService.search("over the lazy").split("\n")).containsExactly("fox jumps over the lazy dog", "over the lazy fox");
+        assertThat(searchService.search("lazy fox")).isEqualTo("over the lazy fox");
+        Assertions.assertThrows(NotFoundException.class, () -> searchService.search("jumps over the dog"));
+        Assertions.assertThrows(NotFoundException.class, () -> searchService.search("fox jumps over the lazy dog again"));
+    }
+}
@@ -0,0 +1,131 @@
+package com.slupicki.linserver;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.web.servlet.MockMvc;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@SpringBootTest
+@AutoConfigureMockMvc
+class SearchControllerTest {
+
+    @Autowired
+    MockMvc mockMvc;
+
+    @Autowired
+    SearchService searchService;
+
+    @BeforeEach
+    void setUp() {
+        SourceText.setLines(new String[]{"the", "zażółć gęślą jaźń", "fox jumps over the"});
+        searchService.index();
+    }
+
+    @Test
+    void shouldGetLineBytes() throws Exception {
+        mockMvc.perform(get("/get/2"))
+                .andExpect(request().asyncNotStarted())
+                .andExpect(status().isOk())
+                .andExpect(header().longValue("Content-Length", 26))
+                .andExpect(content().contentTypeCompatibleWith("text/plain"))
+                .andExpect(content().bytes("zażółć gęślą jaźń".getBytes("UTF-8")));
+    }
+
+    @Test
+    void shouldGetRangeOfLines() throws Exception {
+        mockMvc.perform(get("/get/1/3"))
+                .andExpect(status().isOk())
+                .andExpect(content().bytes("the\nzażółć gęślą jaźń\nfox jumps over the".getBytes("UTF-8")));
+    }
+
+    @Test
+    void shouldReturnNotFoundForLineOutOfRange() throws Exception {
+        mockMvc.perform(get("/get/4")).andExpect(status().isNotFound());
+        mockMvc.perform(get("/get/2/4")).andExpect(status().isNotFound());
+    }
+
+    @Test
+    void shouldStreamMatchingLines() throws Exception {
+        mockMvc.perform(get("/search").param("phrase", "THE"))
+                .andExpect(status().isOk())
+                .andExpect(content().contentTypeCompatibleWith("text/plain"))
+                .andExpect(content().string("the\nfox jumps over the"));
+        mockMvc.perform(get("/search").param("phrase", "Gęślą"))
+                .andExpect(content().bytes("zażółć gęślą jaźń".getBytes("UTF-8")));
+    }
+
+    @Test
+    void shouldPageMatchingLines() throws Exception {
+        mockMvc.perform(get("/search").param("phrase", "the").param("limit", "1"))
+                .andExpect(content().string("the"));
+        mockMvc.perform(get("/search").param("phrase", "the").param("offset", "1").param("limit", "5"))
+                .andExpect(content().string("fox jumps over the"));
+        mockMvc.perform(get("/search").param("phrase", "the").param("offset", "2"))
+                .andExpect(status().isNotFound());
+        mockMvc.perform(get("/search").param("phrase", "the").param("limit", "0"))
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    void shouldCountMatchingLines() throws Exception {
+        mockMvc.perform(get("/search").param("phrase", "the").param("count", "true"))
+                .andExpect(status().isOk())
+                .andExpect(content().string("2"));
+        mockMvc.perform(get("/search").param("phrase", "dog").param("count", "true"))
+                .andExpect(content().string("0"));
+    }
+
+    @Test
+    void shouldReturnNotFoundForMissingPhrase() throws Exception {
+        mockMvc.perform(get("/search").param("phrase", "dog")).andExpect(status().isNotFound())
+                .andExpect(content().string(""))
+                .andExpect(result -> assertThat(result.getResolvedException()).isNull());
+    }
+
+    @Test
+    void shouldServeDocumentsOfCorpus() throws Exception {
+        SourceText.publish(new Corpus(List.of("a.txt", "b.txt"), List.of(
+                SourceText.of("the", "quick brown", "fox jumps over the"),
+                SourceText.of("lazy dog", "fox jumps high"))));
+        searchService.index();
+        mockMvc.perform(get("/get/b.txt/1")).andExpect(content().string("lazy dog"));
+        mockMvc.perform(get("/get/a.txt/2/3")).andExpect(content().string("quick brown\nfox jumps over the"));
+        mockMvc.perform(get("/get/4")).andExpect(content().string("lazy dog"));
+        mockMvc.perform(get("/get/b.txt/3")).andExpect(status().isNotFound());
+        mockMvc.perform(get("/get/c.txt/1")).andExpect(status().isNotFound());
+        mockMvc.perform(get("/search").param("phrase", "fox jumps"))
+                .andExpect(content().string("a.txt:3:fox jumps over the\nb.txt:2:fox jumps high"));
+        mockMvc.perform(get("/search").param("phrase", "fox jumps").param("doc", "b.txt"))
+                .andExpect(content().string("fox jumps high"));
+        mockMvc.perform(get("/search").param("phrase", "the").param("doc", "b.txt").param("count", "true"))
+                .andExpect(content().string("0"));
+        mockMvc.perform(get("/search").param("phrase", "the").param("doc", "b.txt"))
+                .andExpect(status().isNotFound());
+        mockMvc.perform(get("/search").param("phrase", "the").param("doc", "c.txt"))
+                .andExpect(status().isNotFound());
+    }
+
+    @Test
+    void shouldExposeSearchMetrics() throws Exception {
+        mockMvc.perform(get("/search").param("phrase", "the"));
+        mockMvc.perform(get("/actuator/metrics/linserver.search").param("tag", "stage:lookup"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.measurements[0].statistic").value("COUNT"))
+                .andExpect(jsonPath("$.measurements[0].value").value(greaterThan(0.0)));
+        mockMvc.perform(get("/actuator/metrics/linserver.index.lines"))
+                .andExpect(jsonPath("$.measurements[0].value").value(3.0));
+    }
+}
@@ -0,0 +1,74 @@
+package com.slupicki.linserver;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class SearchMetricsTest {
+
+    @TempDir
+    Path tempDir;
+
+    private final IndexSearchServiceImpl searchService = new IndexSearchServiceImpl();
+    private final CachingSearchService searchCache = new CachingSearchService(searchService);
+    private final MeterRegistry registry = new SimpleMeterRegistry();
+    private final SearchMetrics searchMetrics = new SearchMetrics(registry, searchCache, new IndexLoader(searchService, searchCache));
+
+    @BeforeEach
+    void setUp() {
+        searchService.setMaxPhraseLengthToIndex(1);
+        SourceText.setLines(new String[]{"the", "quick brown", "fox jumps over the", "the fox jumps"});
+        searchCache.index(SourceText.current());
+    }
+
+    @Test
+    void shouldRecordStagesAndLineCounts() {
+        search("fox jumps");
+        search("the");
+        assertThat(registry.get("linserver.search").tag("stage", "lookup").timer().count()).isEqualTo(2);
+        assertThat(registry.get("linserver.search").tag("stage", "evaluate").timer().totalTime(TimeUnit.NANOSECONDS)).isPositive();
+        assertThat(registry.get("linserver.search.verified").summary().totalAmount()).isEqualTo(5);
+        assertThat(registry.get("linserver.search.matched").summary().totalAmount()).isEqualTo(5);
+        assertThat(registry.get("linserver.index.lines").gauge().value()).isEqualTo(4);
+        assertThat(registry.get("linserver.index.entries").gauge().value()).isEqualTo(searchService.getIndex().size());
+        search("the");
+        assertThat(registry.get("linserver.cache.gets").tag("result", "hit").functionCounter().count()).isEqualTo(1);
+    }
+
+    @Test
+    void shouldRecordSlowSearchesInFlightRecorder() throws Exception {
+        Path dump = tempDir.resolve("search.jfr");
+        try (Recording recording = new Recording()) {
+            recording.enable(SlowSearchEvent.class).withThreshold(Duration.ZERO);
+            recording.start();
+            search("fox jumps");
+            recording.stop();
+            recording.dump(dump);
+        }
+        List<RecordedEvent> events = RecordingFile.readAllEvents(dump);
+        assertThat(events).hasSize(1);
+        assertThat(events.get(0).getString("phrase")).isEqualTo("fox jumps");
+        assertThat(events.get(0).getInt("matched")).isEqualTo(2);
+        assertThat(events.get(0).getInt("verified")).isEqualTo(2);
+    }
+
+    private void search(String phrase) {
+        SearchMetrics.Search search = searchMetrics.find(searchCache, phrase);
+        while (search.next() != Matches.NO_MORE) {
+            // reads all matches
+        }
+        search.finish();
+    }
+}
@@ -0,0 +1,153 @@
+package com.slupicki.linserver;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.URLDecoder;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ShardCoordinatorTest {
+
+    private final List<HttpServer> servers = new ArrayList<>();
+    private final ShardCoordinator coordinator = new ShardCoordinator(new ObjectMapper());
+
+    @AfterEach
+    void tearDown() {
+        servers.forEach(server -> server.stop(0));
+    }
+
+    @Test
+    void shouldRouteLinesToOwningShards() throws Exception {
+        coordinator.configure(List.of(
+                shard(1, 2, 1, "the", "quick brown", "fox jumps over the"),
+                shard(2, 2, 4, "lazy dog", "fox jumps high")));
+        assertThat(text(coordinator.getLine(1))).isEqualTo("the");
+        assertThat(text(coordinator.getLine(4))).isEqualTo("lazy dog");
+        assertThat(coordinator.getLines(2, 5)).extracting(ShardCoordinatorTest::text)
+                .containsExactly("quick brown\nfox jumps over the", "lazy dog\nfox jumps high");
+        assertThat(coordinator.getLines(4, 4)).extracting(ShardCoordinatorTest::text).containsExactly("lazy dog");
+        Assertions.assertThrows(NotFoundException.class, () -> coordinator.getLine(6));
+        Assertions.assertThrows(NotFoundException.class, () -> coordinator.getLines(4, 6));
+    }
+
+    @Test
+    void shouldMergeSearchResultsInLineOrder() throws Exception {
+        coordinator.configure(List.of(
+                shard(1, 3, 1, "fox 1", "dog 2", "fox 3"),
+                shard(2, 3, 4, "dog 4", "dog 5"),
+                shard(3, 3, 6, "fox 6", "", "fox 8")));
+        assertThat(search("fox", 0, null, false)).isEqualTo("fox 1\nfox 3\nfox 6\nfox 8");
+        assertThat(search("fox", 1, 2, false)).isEqualTo("fox 3\nfox 6");
+        assertThat(search("fox", 3, null, false)).isEqualTo("fox 8");
+        assertThat(search("o", 4, 2, false)).isEqualTo("dog 5\nfox 6");
+        assertThat(search("", 5, 2, false)).isEqualTo("fox 6\n");
+        assertThat(search("fox", 0, null, true)).isEqualTo("4");
+        assertThat(search("cat", 0, null, true)).isEqualTo("0");
+        MockHttpServletResponse miss = new MockHttpServletResponse();
+        assertThat(coordinator.search("cat", 0, null, false, miss)).isFalse();
+        assertThat(miss.getContentAsString()).isEmpty();
+        assertThat(coordinator.search("fox", 4, null, false, new MockHttpServletResponse())).isFalse();
+    }
+
+    @Test
+    void shouldRejectShardsWithInconsistentRanges() throws Exception {
+        coordinator.configure(List.of(
+                shard(1, 2, 1, "the", "quick brown"),
+                shard(2, 2, 4, "lazy dog")));
+        ResponseStatusException e = Assertions.assertThrows(ResponseStatusException.class, () -> coordinator.getLine(1));
+        assertThat(e.getReason()).contains("starts at line 4, expected 3");
+    }
+
+    @Test
+    void shouldFailWholeSearchWhenShardIsDown() throws Exception {
+        coordinator.configure(List.of(
+                shard(1, 2, 1, "fox 1", "dog 2"),
+                shard(2, 2, 3, "fox 3")));
+        assertThat(search("fox", 0, null, false)).isEqualTo("fox 1\nfox 3");
+        servers.get(1).stop(0);
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        ResponseStatusException e = Assertions.assertThrows(ResponseStatusException.class,
+                () -> coordinator.search("fox", 0, null, false, response));
+        assertThat(e.getStatus().value()).isEqualTo(502);
+        assertThat(response.getContentAsByteArray()).isEmpty();
+        assertThat(text(coordinator.getLine(1))).isEqualTo("fox 1");
+    }
+
+    private String search(String phrase, int offset, Integer limit, boolean count) throws IOException {
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        coordinator.search(phrase, offset, limit, count, response);
+        return response.getContentAsString(StandardCharsets.UTF_8);
+    }
+
+    private static String text(ByteBuffer buffer) {
+        return StandardCharsets.UTF_8.decode(buffer.duplicate()).toString();
+    }
+
+    /**
+     * Minimal shard node: lines numbered from 1 within the shard, search finds lines containing the phrase.
+     */
+    private URI shard(int shard, int shards, int firstLine, String... lines) throws IOException {
+        HttpServer server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/admin/shard", exchange -> respond(exchange, 200, String.format(
+                "{\"shard\":%d,\"shards\":%d,\"firstLine\":%d,\"lines\":%d}", shard, shards, firstLine, lines.length)));
+        server.createContext("/get/", exchange -> {
+            int[] range = Arrays.stream(exchange.getRequestURI().getPath().substring(5).split("/"))
+                    .mapToInt(Integer::parseInt).toArray();
+            int from = range[0];
+            int to = range[range.length - 1];
+            if (from < 1 || to > lines.length) {
+                respond(exchange, 404, "");
+            } else {
+                respond(exchange, 200, String.join("\n", Arrays.copyOfRange(lines, from - 1, to)));
+            }
+        });
+        server.createContext("/search", exchange -> {
+            Map<String, String> params = new HashMap<>();
+            for (String param : exchange.getRequestURI().getRawQuery().split("&")) {
+                String[] nameAndValue = param.split("=", -1);
+                params.put(nameAndValue[0], URLDecoder.decode(nameAndValue[1], StandardCharsets.UTF_8));
+            }
+            List<String> matched = Arrays.stream(lines).filter(line -> line.contains(params.get("phrase")))
+                    .limit(Long.parseLong(params.getOrDefault("limit", "" + Integer.MAX_VALUE)))
+                    .collect(Collectors.toList());
+            if (params.containsKey("count")) {
+                respond(exchange, 200, "" + IntStream.range(0, lines.length).filter(n -> lines[n].contains(params.get("phrase"))).count());
+            } else if (matched.isEmpty()) {
+                respond(exchange, 404, "");
+            } else {
+                respond(exchange, 200, String.join("\n", matched));
+            }
+        });
+        server.start();
+        servers.add(server);
+        return URI.create("http://localhost:" + server.getAddress().getPort());
+    }
+
+    private static void respond(HttpExchange exchange, int status, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.sendResponseHeaders(status, bytes.length == 0 ? -1 : bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+}
@@ -0,0 +1,31 @@
+package com.slupicki.linserver;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class SuffixArraySearchServiceTest extends AbstractSearchServiceTest {
+
+    @Override
+    SearchService getServiceUnderTest() {
+        return new SuffixArraySearchServiceImpl();
+    }
+
+    @Test
+    void shouldFindAnySubstringOfLine() {
+        searchService.index();
+        assertThat(searchService.search("uick bro")).isEqualTo("quick brown");
+        assertThat(searchService.search("o").split("\n"))
+                .containsExactly("quick brown", "fox jumps over the", "lazy dog", "fox jumps high");
+        assertThat(searchService.search("S OVER T")).isEqualTo("fox jumps over the");
+    }
+
+    @Test
+    void shouldNotFindPhraseSpanningLines() {
+        searchService.index();
+        Assertions.assertThrows(NotFoundException.class, () -> searchService.search("the\nquick"));
+        Assertions.assertThrows(NotFoundException.class, () -> searchService.search("thequick"));
+        Assertions.assertThrows(NotFoundException.class, () -> searchService.search(""));
+    }
+}
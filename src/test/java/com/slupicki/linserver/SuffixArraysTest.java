@@ -0,0 +1,39 @@
+package com.slupicki.linserver;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Comparator;
+import java.util.Random;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class SuffixArraysTest {
+
+    @Test
+    void shouldSortSuffixesLikeNaiveSort() {
+        Random random = new Random(7);
+        for (int i = 0; i < 2000; i++) {
+            char[] text = new char[random.nextInt(40)];
+            int alphabet = 1 + random.nextInt(4);
+            for (int j = 0; j < text.length; j++) {
+                text[j] = (char) ('a' + random.nextInt(alphabet));
+            }
+            assertThat(SuffixArrays.of(text, text.length)).as(new String(text)).containsExactly(naive(text));
+        }
+    }
+
+    @Test
+    void shouldSortSuffixesOfPolishText() {
+        char[] text = "zażółć gęślą jaźń\nżółć".toCharArray();
+        assertThat(SuffixArrays.of(text, text.length)).containsExactly(naive(text));
+    }
+
+    private static int[] naive(char[] text) {
+        String string = new String(text);
+        return IntStream.range(0, text.length).boxed()
+                .sorted(Comparator.comparing(string::substring))
+                .mapToInt(Integer::intValue)
+                .toArray();
+    }
+}
@@ -0,0 +1,61 @@
+package com.slupicki.linserver;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.web.servlet.MockMvc;
+
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@SpringBootTest
+@AutoConfigureMockMvc
+class SuggestControllerTest {
+
+    @Autowired
+    MockMvc mockMvc;
+
+    @Autowired
+    CachingSearchService searchCache;
+
+    private SearchService engine;
+
+    @BeforeEach
+    void setUp() {
+        engine = searchCache.getDelegate();
+        SourceText.setLines(new String[]{"the", "quick brown", "fox jumps over the", "lazy dog", "fox jumps high"});
+        TreeSearchServiceImpl tree = new TreeSearchServiceImpl();
+        tree.index();
+        searchCache.setDelegate(tree);
+    }
+
+    @AfterEach
+    void tearDown() {
+        searchCache.setDelegate(engine);
+    }
+
+    @Test
+    void shouldSuggestCompletionsOfPrefix() throws Exception {
+        mockMvc.perform(get("/suggest").param("prefix", "fox jumps "))
+                .andExpect(status().isOk())
+                .andExpect(content().json("[{\"phrase\":\"fox jumps high\",\"lines\":1},"
+                        + "{\"phrase\":\"fox jumps over\",\"lines\":1}]", true));
+        mockMvc.perform(get("/suggest").param("prefix", "Th").param("limit", "1"))
+                .andExpect(content().json("[{\"phrase\":\"the\",\"lines\":2}]", true));
+        mockMvc.perform(get("/suggest").param("prefix", "cat"))
+                .andExpect(status().isOk())
+                .andExpect(content().json("[]", true));
+    }
+
+    @Test
+    void shouldRejectInvalidRequest() throws Exception {
+        mockMvc.perform(get("/suggest").param("prefix", "")).andExpect(status().isBadRequest());
+        mockMvc.perform(get("/suggest").param("prefix", "the").param("limit", "11")).andExpect(status().isBadRequest());
+        searchCache.setDelegate(engine);
+        mockMvc.perform(get("/suggest").param("prefix", "the")).andExpect(status().isBadRequest());
+    }
+}
@@ -0,0 +1,56 @@
+package com.slupicki.linserver;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class TermDictionaryTest {
+
+    @Test
+    void shouldNumberDistinctTokensInOrderOfAddition() {
+        TermDictionary terms = new TermDictionary();
+        String text = "fox, jumps over the fox";
+        assertThat(terms.add(text, 0, 3)).isEqualTo(0);
+        assertThat(terms.add(text, 5, 10)).isEqualTo(1);
+        assertThat(terms.add(text, 20, 23)).isEqualTo(0);
+        assertThat(terms.add(text, 3, 3)).isEqualTo(2);
+        assertThat(terms.id("the fox", 4, 7)).isEqualTo(0);
+        assertThat(terms.id("over", 0, 4)).isEqualTo(TermDictionary.NONE);
+        assertThat(terms.term(1)).isEqualTo("jumps");
+        assertThat(terms.term(2)).isEmpty();
+        assertThat(terms.size()).isEqualTo(3);
+    }
+
+    @Test
+    void shouldKeepIdsWhenGrowingMergingAndCopying() throws IOException {
+        TermDictionary left = new TermDictionary();
+        IntStream.range(0, 1000).forEach(n -> add(left, "word" + n));
+        TermDictionary right = new TermDictionary();
+        IntStream.range(500, 1500).forEach(n -> add(right, "word" + n));
+        TermDictionary merged = left.addAll(right).trim();
+        TermDictionary copy = merged.copy();
+        add(copy, "żółw");
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        merged.write(new DataOutputStream(bytes));
+        TermDictionary read = TermDictionary.read(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+        for (int n = 0; n < 1500; n++) {
+            assertThat(merged.id("word" + n, 0, ("word" + n).length())).isEqualTo(n);
+            assertThat(copy.id("word" + n, 0, ("word" + n).length())).isEqualTo(n);
+            assertThat(read.term(n)).isEqualTo("word" + n);
+        }
+        assertThat(merged.size()).isEqualTo(1500);
+        assertThat(copy.id("żółw", 0, 4)).isEqualTo(1500);
+        assertThat(merged.id("żółw", 0, 4)).isEqualTo(TermDictionary.NONE);
+    }
+
+    private static void add(TermDictionary terms, String term) {
+        terms.add(term, 0, term.length());
+    }
+}
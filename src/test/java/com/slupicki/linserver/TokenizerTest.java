@@ -0,0 +1,57 @@
+package com.slupicki.linserver;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class TokenizerTest {
+
+    private static final String CHARACTERS = "abcŻółĘ \t.,-'\"!1";
+
+    @Test
+    void shouldSplitWordsLikeRegularExpression() {
+        Random random = new Random(13);
+        Tokenizer tokenizer = new Tokenizer();
+        for (String text : texts(random)) {
+            tokenizer.words(text);
+            assertThat(tokens(tokenizer)).as("'%s'", text).containsExactly(text.strip().split("\\P{L}+", -1));
+        }
+        assertThat(tokens(tokenizer.words("  Ned Land. "))).containsExactly("Ned", "Land", "");
+        assertThat(tokenizer.phrase(0, 3)).isEqualTo("Ned Land ");
+    }
+
+    @Test
+    void shouldSplitIntoRunsOfLettersAndOtherCharacters() {
+        Tokenizer tokenizer = new Tokenizer();
+        assertThat(tokens(tokenizer.runs("fox, jumps!"))).containsExactly("fox", ", ", "jumps", "!");
+        assertThat(tokens(tokenizer.runs(" fox"))).containsExactly(" ", "fox");
+        assertThat(tokens(tokenizer.runs(""))).containsExactly("");
+        for (String text : texts(new Random(17))) {
+            assertThat(String.join("", tokens(tokenizer.runs(text)))).isEqualTo(text);
+        }
+    }
+
+    private static List<String> texts(Random random) {
+        List<String> texts = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            StringBuilder text = new StringBuilder();
+            for (int length = random.nextInt(12); length > 0; length--) {
+                text.append(CHARACTERS.charAt(random.nextInt(CHARACTERS.length())));
+            }
+            texts.add(text.toString());
+        }
+        return texts;
+    }
+
+    private static List<String> tokens(Tokenizer tokenizer) {
+        List<String> tokens = new ArrayList<>();
+        for (int token = 0; token < tokenizer.count(); token++) {
+            tokens.add(tokenizer.token(token));
+        }
+        return tokens;
+    }
+}
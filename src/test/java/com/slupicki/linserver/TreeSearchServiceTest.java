@@ -1,8 +1,49 @@
 package com.slupicki.linserver;
 
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
 public class TreeSearchServiceTest extends AbstractSearchServiceTest {
     @Override
     SearchService getServiceUnderTest() {
         return new TreeSearchServiceImpl();
     }
+
+    @Test
+    void shouldSuggestMostFrequentCompletions() {
+        TreeSearchServiceImpl tree = (TreeSearchServiceImpl) searchService;
+        tree.index();
+        assertThat(tree.suggest("FO", 10)).extracting(Object::toString).containsExactly("fox (2)");
+        assertThat(tree.suggest("fox jumps ", 10)).extracting(Object::toString)
+                .containsExactly("fox jumps high (1)", "fox jumps over (1)");
+        assertThat(tree.suggest("fox jumps ", 1)).extracting(Object::toString).containsExactly("fox jumps high (1)");
+        assertThat(tree.suggest("over th", 10)).extracting(Object::toString).containsExactly("over the (1)");
+        assertThat(tree.suggest(" ", 1)).extracting(Object::toString).containsExactly(" jumps (2)");
+        assertThat(tree.suggest("cat", 10)).isEmpty();
+        assertThat(tree.suggest("lazy dog ", 10)).isEmpty();
+    }
+
+    @Test
+    void shouldSuggestTopCompletionsAmongManyChildren() {
+        List<String> lines = new ArrayList<>();
+        for (char letter = 'a'; letter <= 'o'; letter++) {
+            for (int line = 'a'; line <= letter; line++) {
+                lines.add("go x" + letter);
+            }
+        }
+        lines.add("go y");
+        SourceText.setLines(lines.toArray(new String[0]));
+        TreeSearchServiceImpl tree = (TreeSearchServiceImpl) searchService;
+        tree.index();
+        assertThat(tree.suggest("go x", 10)).extracting(Object::toString).containsExactly(
+                "go xo (15)", "go xn (14)", "go xm (13)", "go xl (12)", "go xk (11)",
+                "go xj (10)", "go xi (9)", "go xh (8)", "go xg (7)", "go xf (6)");
+        assertThat(tree.suggest("go ", 3)).extracting(Object::toString)
+                .containsExactly("go xo (15)", "go xn (14)", "go xm (13)");
+        assertThat(tree.suggest("go y", 10)).extracting(Object::toString).containsExactly("go y (1)");
+    }
 }